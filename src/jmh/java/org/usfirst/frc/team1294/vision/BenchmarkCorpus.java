@@ -0,0 +1,117 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The 640x480 BGR frames the benchmarks cycle through. Recorded frames (.jpg or .png) are
+ * loaded from the directory named by the VISION_CORPUS environment variable; without it a
+ * fixed set of synthetic frames with a target on a noisy background is generated.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkCorpus {
+
+	public static final String CORPUS_ENV = "VISION_CORPUS";
+	public static final int WIDTH = 640;
+	public static final int HEIGHT = 480;
+	private static final int SYNTHETIC_FRAMES = 16;
+
+	static {
+		Application.loadNativeOpenCvLibraries();
+	}
+
+	private List<Mat> frames;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void load() {
+		String corpus = System.getenv(CORPUS_ENV);
+		frames = corpus == null ? synthetic() : load(new File(corpus));
+		if (frames.isEmpty()) {
+			throw new IllegalStateException("No frames found in " + corpus);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void release() {
+		for (Mat frame : frames) {
+			frame.release();
+		}
+	}
+
+	public Mat nextFrame() {
+		Mat frame = frames.get(next);
+		next = (next + 1) % frames.size();
+		return frame;
+	}
+
+	public List<Mat> getFrames() {
+		return frames;
+	}
+
+	private static List<Mat> load(File directory) {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(".jpg") || name.endsWith(".png"));
+		List<Mat> frames = new ArrayList<>();
+		if (files == null) {
+			return frames;
+		}
+		Arrays.sort(files);
+		for (File file : files) {
+			Mat frame = Imgcodecs.imread(file.getAbsolutePath());
+			if (frame.empty()) {
+				continue;
+			}
+			if (frame.cols() != WIDTH || frame.rows() != HEIGHT) {
+				Imgproc.resize(frame, frame, new Size(WIDTH, HEIGHT));
+			}
+			frames.add(frame);
+		}
+		return frames;
+	}
+
+	private static List<Mat> synthetic() {
+		Random random = new Random(1294);
+		byte[] noise = new byte[WIDTH * HEIGHT * 3];
+		Scalar green = new Scalar(80, 255, 80);
+		List<Mat> frames = new ArrayList<>();
+		for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+			Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3);
+			for (int j = 0; j < noise.length; j++) {
+				noise[j] = (byte) random.nextInt(80);
+			}
+			frame.put(0, 0, noise);
+
+			// a U shaped goal target, drifting a little from frame to frame
+			int x = 200 + random.nextInt(100);
+			int y = 150 + random.nextInt(100);
+			Imgproc.rectangle(frame, new Point(x, y), new Point(x + 12, y + 90), green, -1);
+			Imgproc.rectangle(frame, new Point(x + 128, y), new Point(x + 140, y + 90), green, -1);
+			Imgproc.rectangle(frame, new Point(x, y + 78), new Point(x + 140, y + 90), green, -1);
+
+			// and some smaller reflections
+			for (int j = 0; j < 10; j++) {
+				int rx = random.nextInt(WIDTH - 20);
+				int ry = random.nextInt(HEIGHT - 20);
+				Imgproc.rectangle(frame, new Point(rx, ry), new Point(rx + 2 + random.nextInt(16), ry + 2 + random.nextInt(16)), green, -1);
+			}
+			frames.add(frame);
+		}
+		return frames;
+	}
+}
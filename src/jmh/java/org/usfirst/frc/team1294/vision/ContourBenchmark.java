@@ -0,0 +1,59 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Contour finding on the thresholded masks of the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ContourBenchmark {
+
+	private final List<Mat> masks = new ArrayList<>();
+	private final Mat work = new Mat();
+	private final Mat hierarchy = new Mat();
+	private final List<MatOfPoint> contours = new ArrayList<>();
+	private int next;
+
+	@Setup(Level.Trial)
+	public void threshold(BenchmarkCorpus corpus) {
+		ThresholdEngine engine = new HlsThresholdEngine(new PipelineMetrics());
+		VisionConfig config = InMemoryTable.create().getConfig();
+		for (Mat frame : corpus.getFrames()) {
+			Mat mask = new Mat();
+			engine.apply(frame, config, mask);
+			masks.add(mask);
+		}
+	}
+
+	/**
+	 * Includes copying the mask, since findContours modifies its input.
+	 */
+	@Benchmark
+	public int findContours() {
+		masks.get(next).copyTo(work);
+		next = (next + 1) % masks.size();
+		Imgproc.findContours(work, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		int found = contours.size();
+		for (MatOfPoint contour : contours) {
+			contour.release();
+		}
+		contours.clear();
+		return found;
+	}
+}
@@ -0,0 +1,67 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JPEG encoding at a range of qualities, and framing the result for the MJPEG stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+	@Param({ "30", "50", "80" })
+	public int quality;
+
+	private final MatOfByte jpegBuffer = new MatOfByte();
+	private MatOfInt parameters;
+	private final List<byte[]> images = new ArrayList<>();
+	private ByteBuffer partBuffer;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void encodeCorpus(BenchmarkCorpus corpus) {
+		parameters = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+		int largest = 0;
+		for (Mat frame : corpus.getFrames()) {
+			Imgcodecs.imencode(".jpg", frame, jpegBuffer, parameters);
+			byte[] image = jpegBuffer.toArray();
+			images.add(image);
+			largest = Math.max(largest, image.length);
+		}
+		partBuffer = ByteBuffer.allocateDirect(largest + 1024);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public MatOfByte encode(BenchmarkCorpus corpus) {
+		Imgcodecs.imencode(".jpg", corpus.nextFrame(), jpegBuffer, parameters);
+		return jpegBuffer;
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public ByteBuffer mjpegFraming() {
+		byte[] image = images.get(next);
+		next = (next + 1) % images.size();
+		MJpegStreamer.writePart(partBuffer, MJpegStreamer.partHeader(image.length), image);
+		return partBuffer;
+	}
+}
@@ -0,0 +1,55 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * A whole frame through ImageProcessor.processFrame(), with no stream viewers, for each
+ * detection mode.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+	@Param({ "1", "2", "4" })
+	public int pyramidScale;
+
+	@Param({ "false", "true" })
+	public boolean roiTracking;
+
+	private ImageProcessor imageProcessor;
+
+	@Setup
+	public void setUp() {
+		VisionNetworkTable table = InMemoryTable.create();
+		table.setPyramidScale(pyramidScale);
+		table.setRoiTracking(roiTracking);
+		// every frame of the corpus goes through the whole pipeline, however alike they are
+		table.setChangeGating(false);
+		imageProcessor = new ImageProcessor(new FrameSource() {
+			@Override
+			public boolean read(Mat frame) {
+				return false;
+			}
+
+			@Override
+			public void close() {
+			}
+		}, table);
+	}
+
+	@Benchmark
+	public TargetResult processFrame(BenchmarkCorpus corpus) {
+		return imageProcessor.processFrame(corpus.nextFrame());
+	}
+}
@@ -0,0 +1,85 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Ranking a frame's contours as targets and finding the upper corners of the best one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class TargetBenchmark {
+
+	@Param({"1", "3", "10"})
+	public int maxTargets;
+
+	private final List<List<MatOfPoint>> frameContours = new ArrayList<>();
+	private final List<MatOfPoint> targets = new ArrayList<>();
+	private final List<Rect> targetRects = new ArrayList<>();
+	private final CandidateScorer scorer = new CandidateScorer(CandidateScorer.defaultTemplate());
+	private final VisionConfig config = InMemoryTable.create().getConfig();
+	private final int[] corners = new int[4];
+	private int[] points = new int[256];
+	private int nextFrame;
+	private int nextTarget;
+
+	@Setup(Level.Trial)
+	public void findContours(BenchmarkCorpus corpus) {
+		ThresholdEngine engine = new HlsThresholdEngine(new PipelineMetrics());
+		Mat mask = new Mat();
+		Mat hierarchy = new Mat();
+		for (Mat frame : corpus.getFrames()) {
+			engine.apply(frame, config, mask);
+			List<MatOfPoint> contours = new ArrayList<>();
+			Imgproc.findContours(mask, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+			frameContours.add(contours);
+
+			CandidateScorer.Candidate target = scorer.best(contours, config, 1);
+			if (target != null) {
+				targets.add(target.getContour());
+				targetRects.add(target.getBoundingRect());
+			}
+		}
+		mask.release();
+		hierarchy.release();
+		if (targets.isEmpty()) {
+			throw new IllegalStateException("No targets found in the corpus");
+		}
+	}
+
+	/**
+	 * Scoring a frame's contours and keeping the best few.
+	 */
+	@Benchmark
+	public List<CandidateScorer.Candidate> rankCandidates() {
+		List<MatOfPoint> contours = frameContours.get(nextFrame);
+		nextFrame = (nextFrame + 1) % frameContours.size();
+		return scorer.rank(contours, config, 1, maxTargets);
+	}
+
+	@Benchmark
+	public int[] cornerSearch() {
+		MatOfPoint target = targets.get(nextTarget);
+		Rect r = targetRects.get(nextTarget);
+		nextTarget = (nextTarget + 1) % targets.size();
+		points = ContourGeometry.toArray(target, points);
+		ContourGeometry.findUpperCorners(points, (int) target.total(), r.x, r.x + r.width, r.y, corners);
+		return corners;
+	}
+}
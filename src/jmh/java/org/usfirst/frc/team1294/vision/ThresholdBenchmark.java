@@ -0,0 +1,50 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Colour conversion plus threshold, as done at the start of ImageProcessor.processImage(),
+ * with each of the threshold engines. The engines themselves are run, so the numbers follow
+ * any change to them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ThresholdBenchmark {
+
+	private final Mat maskImage = new Mat();
+	private final VisionConfig config = InMemoryTable.create().getConfig();
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final ThresholdEngine hlsEngine = new HlsThresholdEngine(metrics);
+	private final LutThresholdEngine lutEngine = new LutThresholdEngine(metrics, hlsEngine);
+
+	@Benchmark
+	public Mat hlsEngine(BenchmarkCorpus corpus) {
+		hlsEngine.apply(corpus.nextFrame(), config, maskImage);
+		return maskImage;
+	}
+
+	@Setup(Level.Trial)
+	public void buildTable() {
+		lutEngine.prepare(config);
+	}
+
+	/**
+	 * The lookup table is built once up front and reused, as in a match.
+	 */
+	@Benchmark
+	public Mat lutEngine(BenchmarkCorpus corpus) {
+		lutEngine.apply(corpus.nextFrame(), config, maskImage);
+		return maskImage;
+	}
+}
@@ -0,0 +1,51 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * HLS threshold split into bands across threads, against the single-threaded engine.
+ * Counts above the number of processors are clamped, so on the Pi 4 is the useful maximum.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class TiledThresholdBenchmark {
+
+	@Param({ "1", "2", "3", "4" })
+	public int threads;
+
+	private final Mat maskImage = new Mat();
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final ThresholdEngine singleThreaded = new HlsThresholdEngine(metrics);
+	private final ThresholdEngine tiled = new TiledThresholdEngine(metrics);
+	private VisionConfig config;
+
+	@Setup
+	public void setUp() {
+		VisionNetworkTable table = InMemoryTable.create();
+		table.setThresholdThreads(threads);
+		config = table.getConfig();
+	}
+
+	@Benchmark
+	public Mat singleThreaded(BenchmarkCorpus corpus) {
+		singleThreaded.apply(corpus.nextFrame(), config, maskImage);
+		return maskImage;
+	}
+
+	@Benchmark
+	public Mat tiled(BenchmarkCorpus corpus) {
+		tiled.apply(corpus.nextFrame(), config, maskImage);
+		return maskImage;
+	}
+}
@@ -0,0 +1,49 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures how many bytes of Java heap the current thread allocates between
+ * {@link #begin()} and {@link #end()}, using the HotSpot per-thread allocation counter.
+ * Does nothing on JVMs that don't support it.
+ */
+public class AllocationCounter {
+
+	private final com.sun.management.ThreadMXBean threadBean;
+	private long start;
+	private long lastAllocatedBytes = -1;
+
+	public AllocationCounter() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean
+				&& ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+			threadBean = (com.sun.management.ThreadMXBean) bean;
+			threadBean.setThreadAllocatedMemoryEnabled(true);
+		} else {
+			threadBean = null;
+		}
+	}
+
+	public boolean isSupported() {
+		return threadBean != null;
+	}
+
+	public void begin() {
+		if (threadBean != null) {
+			start = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+	}
+
+	public void end() {
+		if (threadBean != null) {
+			lastAllocatedBytes = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - start;
+		}
+	}
+
+	/**
+	 * @return bytes allocated during the last begin/end pair, or -1 if not supported
+	 */
+	public long getLastAllocatedBytes() {
+		return lastAllocatedBytes;
+	}
+}
@@ -23,11 +23,31 @@ public class Application {
 		loadNativeHackedStandardCPPLibraries();
 		loadNativeOpenCvLibraries();
 		
+		// --replay <frame log, directory or video file> [first frame] [last frame] runs recorded frames
+		// through the pipeline instead of the webcam. It publishes to an in-memory table rather than
+		// the robot's, with tunables set as -Dvision.<key>=<value>
+		if (args.length >= 2 && "--replay".equals(args[0])) {
+			VisionNetworkTable visionTable = InMemoryTable.fromSystemProperties();
+			FrameSource source = ReplayRunner.openSource(args[1]);
+			if (args.length >= 4 && source instanceof FrameLogFrameSource) {
+				((FrameLogFrameSource) source).setFrameRange(Long.parseLong(args[2]), Long.parseLong(args[3]));
+			}
+			new ReplayRunner(source, visionTable).run();
+			System.exit(0);
+		}
+		// --compare-threshold <directory or video file> checks both threshold engines give the same masks
+		if (args.length >= 2 && "--compare-threshold".equals(args[0])) {
+			VisionNetworkTable visionTable = InMemoryTable.fromSystemProperties();
+			boolean identical = ReplayRunner.compareThresholdEngines(ReplayRunner.openSource(args[1]), visionTable.getConfig());
+			System.exit(identical ? 0 : 1);
+		}
+		
 		VisionNetworkTable visionTable = new VisionNetworkTable();
+		
 		ImageProcessor imageProcessor = new ImageProcessor(webcam, visionTable);
 		imageProcessor.start();
 		
-		MJpegStreamer vs = new MJpegStreamer(cameraPort, imageProcessor, visionTable);
+		MJpegStreamer vs = new MJpegStreamer(cameraPort, imageProcessor);
 		vs.start();
         
 		commandLineInterface(visionTable);
@@ -0,0 +1,16 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.IOException;
+
+/**
+ * Sets controls, e.g. brightness or exposure, on the camera device.
+ */
+public interface CameraControlBackend {
+
+	/**
+	 * Set the control and return once the device has accepted it.
+	 *
+	 * @param control the V4L2 control name, e.g. "brightness"
+	 */
+	void set(String control, int value) throws IOException;
+}
@@ -0,0 +1,169 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Applies camera control changes on its own thread so the processing loop never waits on
+ * the device. Requesting a control only records the value; if it changes again before the
+ * thread gets to it, only the newest value is applied. Callers can request the value they
+ * want every frame: it is only applied again if it changed, or if setting it failed.
+ */
+public class CameraControlService implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CameraControlService.class);
+
+	public static final String BRIGHTNESS = "brightness";
+	public static final String EXPOSURE_AUTO = "exposure_auto";
+	public static final String EXPOSURE_ABSOLUTE = "exposure_absolute";
+	// exposure_auto value for manual exposure
+	public static final int EXPOSURE_MANUAL = 1;
+
+	private final CameraControlBackend backend;
+
+	// guarded by this: the newest value requested for each control, and those not yet applied
+	private final Map<String, Integer> requested = new HashMap<>();
+	private final Map<String, Integer> pending = new LinkedHashMap<>();
+	private final Map<String, Long> requestedAt = new HashMap<>();
+
+	private final Map<String, AppliedControl> applied = new ConcurrentHashMap<>();
+	// only used by the thread applying the changes
+	private final List<String> controls = new ArrayList<>();
+	private final List<Integer> values = new ArrayList<>();
+	private final List<Long> times = new ArrayList<>();
+	private Thread thread;
+
+	public CameraControlService(CameraControlBackend backend) {
+		this.backend = backend;
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this, "camera-control-thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	/**
+	 * Queue the control to be set, unless it was already requested with this value. Never blocks
+	 * on the device.
+	 */
+	public synchronized void set(String control, int value) {
+		// checked before boxing the value, as this is called every frame
+		Integer previous = requested.get(control);
+		if (previous != null && previous == value) {
+			return;
+		}
+		requested.put(control, value);
+		pending.put(control, value);
+		requestedAt.put(control, System.currentTimeMillis());
+		notifyAll();
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			synchronized (this) {
+				while (pending.isEmpty()) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+			applyPending();
+		}
+	}
+
+	/**
+	 * Apply the newest value of each control requested since the last call, on the calling thread.
+	 */
+	void applyPending() {
+		synchronized (this) {
+			for (Map.Entry<String, Integer> entry : pending.entrySet()) {
+				controls.add(entry.getKey());
+				values.add(entry.getValue());
+				times.add(requestedAt.get(entry.getKey()));
+			}
+			pending.clear();
+		}
+
+		for (int i = 0; i < controls.size(); i++) {
+			apply(controls.get(i), values.get(i), times.get(i));
+		}
+		controls.clear();
+		values.clear();
+		times.clear();
+	}
+
+	private void apply(String control, int value, long requestTime) {
+		try {
+			backend.set(control, value);
+		} catch (Exception e) {
+			LOG.error("Could not set camera control {}={}", control, value, e);
+			synchronized (this) {
+				// let the same value be requested again
+				if (!pending.containsKey(control) && Integer.valueOf(value).equals(requested.get(control))) {
+					requested.remove(control);
+				}
+			}
+			return;
+		}
+		AppliedControl change = new AppliedControl(value, requestTime, System.currentTimeMillis());
+		applied.put(control, change);
+		LOG.info("Set camera control {}={} {} ms after it was requested", control, value,
+				change.getAppliedAt() - change.getRequestedAt());
+	}
+
+	/**
+	 * @return the last value successfully set for the control, or null if it hasn't been
+	 */
+	public AppliedControl getApplied(String control) {
+		return applied.get(control);
+	}
+
+	/**
+	 * A value that took effect on the device, with when it was requested and when it was set.
+	 */
+	public static class AppliedControl {
+
+		private final int value;
+		private final long requestedAt;
+		private final long appliedAt;
+
+		AppliedControl(int value, long requestedAt, long appliedAt) {
+			this.value = value;
+			this.requestedAt = requestedAt;
+			this.appliedAt = appliedAt;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		public long getRequestedAt() {
+			return requestedAt;
+		}
+
+		public long getAppliedAt() {
+			return appliedAt;
+		}
+	}
+}
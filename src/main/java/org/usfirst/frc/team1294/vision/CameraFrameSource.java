@@ -0,0 +1,42 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+public class CameraFrameSource implements FrameSource {
+
+	private VideoCapture capture;
+	private long captureNanos;
+
+	public CameraFrameSource(int webcam) {
+		capture = new VideoCapture(webcam);
+		capture.set(Videoio.CAP_PROP_FRAME_WIDTH, 640); // width
+		capture.set(Videoio.CAP_PROP_FRAME_HEIGHT, 480); // height
+	}
+
+	@Override
+	public boolean read(Mat frame) {
+		// grab the image first and decode it separately, so the timestamp isn't delayed by the decode
+		if (!capture.grab()) {
+			return false;
+		}
+		captureNanos = System.nanoTime();
+		return capture.retrieve(frame);
+	}
+
+	@Override
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+
+	@Override
+	public boolean isLive() {
+		return true;
+	}
+
+	@Override
+	public void close() {
+		capture.release();
+	}
+}
@@ -0,0 +1,331 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.imgproc.Moments;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scores a frame's contours as possible targets and ranks the best few, best first.
+ *
+ * Each contour goes through the checks cheapest first and is dropped at the first one it
+ * fails: area, then the aspect ratio of its bounding box, then solidity (area over convex
+ * hull area), and only then its Hu moments against those of the template shape. The
+ * template's moments are worked out once, up front. The score is the area scaled down by
+ * how far the shape is from the template, so of two equally good matches the larger wins.
+ *
+ * Only used from the processing thread.
+ */
+public class CandidateScorer {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CandidateScorer.class);
+
+	/**
+	 * Name of an image in the working directory whose largest shape replaces the built-in template.
+	 */
+	public static final String TEMPLATE_FILE = "target-template.png";
+
+	// Hu moments smaller than this are too noisy to compare, as in Imgproc.matchShapes
+	private static final double HU_EPSILON = 1e-5;
+	private static final int COMPARED_HU_MOMENTS = 4;
+
+	private static final Comparator<Candidate> BY_SCORE = (a, b) -> Double.compare(b.score, a.score);
+
+	private final double[] templateHu;
+
+	// reused from frame to frame
+	// min-heap on score of the best candidates so far, holding pooled Candidate objects
+	private Candidate[] heap = new Candidate[1];
+	private final List<Candidate> ranking = new ArrayList<>();
+	private final Mat hu = new Mat();
+	private final double[] contourHu = new double[7];
+	private final MatOfInt hull = new MatOfInt();
+	private int[] points = new int[256];
+	private int[] hullIndices = new int[64];
+
+	public CandidateScorer(MatOfPoint template) {
+		templateHu = huMoments(Imgproc.moments(template), hu, new double[7]);
+	}
+
+	/**
+	 * @return a scorer for {@link #TEMPLATE_FILE} if there is one, otherwise for {@link #defaultTemplate()}
+	 */
+	public static CandidateScorer load() {
+		File file = new File(System.getProperty("user.dir"), TEMPLATE_FILE);
+		if (file.isFile()) {
+			MatOfPoint template = loadTemplate(file.getPath());
+			if (template != null) {
+				LOG.info("Using target template from {}", file);
+				return new CandidateScorer(template);
+			}
+			LOG.warn("No shape found in {}, using the built-in template", file);
+		}
+		return new CandidateScorer(defaultTemplate());
+	}
+
+	/**
+	 * @return the outline of the U-shaped goal tape, 20in wide and 14in tall with 2in wide strips
+	 */
+	public static MatOfPoint defaultTemplate() {
+		return new MatOfPoint(
+				new Point(0, 0), new Point(0, 140), new Point(200, 140), new Point(200, 0),
+				new Point(180, 0), new Point(180, 120), new Point(20, 120), new Point(20, 0));
+	}
+
+	/**
+	 * @return the largest shape in the image, e.g. a saved mask, or null if it has none
+	 */
+	public static MatOfPoint loadTemplate(String path) {
+		Mat image = Imgcodecs.imread(path, Imgcodecs.IMREAD_GRAYSCALE);
+		List<MatOfPoint> contours = new ArrayList<>();
+		Mat hierarchy = new Mat();
+		MatOfPoint largest = null;
+		if (!image.empty()) {
+			Imgproc.findContours(image, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+			double largestArea = 0;
+			for (MatOfPoint contour : contours) {
+				double area = Imgproc.contourArea(contour);
+				if (largest == null || area > largestArea) {
+					largest = contour;
+					largestArea = area;
+				}
+			}
+		}
+		image.release();
+		hierarchy.release();
+		return largest;
+	}
+
+	/**
+	 * Score the contours that pass the checks in the config and keep the best ones. They are
+	 * collected in a min-heap bounded to the limit, so a noisy mask costs one comparison per
+	 * extra candidate rather than a sort of all of them, and a contour whose area alone can't
+	 * beat the worst kept score is dropped before its moments are computed.
+	 *
+	 * @param areaScale multiplies the area limits, for contours found on a downscaled image
+	 * @param limit how many candidates to keep, at least 1
+	 * @return up to limit candidates, best first; valid until the next call
+	 */
+	public List<Candidate> rank(List<MatOfPoint> contours, VisionConfig config, double areaScale, int limit) {
+		return rank(contours, config, areaScale, limit, true);
+	}
+
+	/**
+	 * Rank the contours found on a downscaled image by area, with only the area and aspect
+	 * ratio checks. Solidity and Hu moments aren't reliable on a few pixels, so they are left
+	 * for the full resolution search around the candidates.
+	 *
+	 * @return up to limit candidates, largest first, with no solidity or shape distance;
+	 *         valid until the next call
+	 */
+	public List<Candidate> rankCoarse(List<MatOfPoint> contours, VisionConfig config, double areaScale, int limit) {
+		return rank(contours, config, areaScale, limit, false);
+	}
+
+	private List<Candidate> rank(List<MatOfPoint> contours, VisionConfig config, double areaScale, int limit,
+			boolean shapeChecks) {
+		limit = Math.max(1, limit);
+		if (heap.length < limit) {
+			heap = Arrays.copyOf(heap, limit);
+		}
+		int size = 0;
+		double minArea = config.getMinTargetArea() * areaScale;
+		double maxDistance = config.getMaxShapeDistance();
+		for (int i = 0; i < contours.size(); i++) {
+			MatOfPoint contour = contours.get(i);
+			if (contour.total() < 3) {
+				continue;
+			}
+			double area = Imgproc.contourArea(contour);
+			if (area <= 0 || area < minArea) {
+				continue;
+			}
+			// the score is never more than the area
+			if (size == limit && area <= heap[0].score) {
+				continue;
+			}
+			Rect boundingRect = Imgproc.boundingRect(contour);
+			double aspectRatio = boundingRect.width / (double) boundingRect.height;
+			if (aspectRatio < config.getMinAspectRatio() || aspectRatio > config.getMaxAspectRatio()) {
+				continue;
+			}
+			double solidity = 0;
+			double distance = 0;
+			double score = area;
+			if (shapeChecks) {
+				solidity = area / hullArea(contour);
+				if (solidity < config.getMinSolidity() || solidity > config.getMaxSolidity()) {
+					continue;
+				}
+				distance = shapeDistance(huMoments(Imgproc.moments(contour), hu, contourHu), templateHu);
+				if (distance > maxDistance) {
+					continue;
+				}
+				if (maxDistance > 0) {
+					score = area * (1 - distance / maxDistance);
+				}
+			}
+
+			Candidate candidate;
+			if (size < limit) {
+				if (heap[size] == null) {
+					heap[size] = new Candidate();
+				}
+				candidate = heap[size++];
+			} else if (score > heap[0].score) {
+				// replace the worst kept candidate
+				candidate = heap[0];
+			} else {
+				continue;
+			}
+			candidate.contour = contour;
+			candidate.area = area;
+			candidate.boundingRect = boundingRect;
+			candidate.solidity = solidity;
+			candidate.shapeDistance = distance;
+			candidate.score = score;
+			if (candidate == heap[0] && size == limit) {
+				siftDown(0, size);
+			} else {
+				siftUp(size - 1);
+			}
+		}
+
+		ranking.clear();
+		for (int i = 0; i < size; i++) {
+			ranking.add(heap[i]);
+		}
+		ranking.sort(BY_SCORE);
+		return ranking;
+	}
+
+	/**
+	 * @return the best candidate, or null if none passed
+	 */
+	public Candidate best(List<MatOfPoint> contours, VisionConfig config, double areaScale) {
+		List<Candidate> ranked = rank(contours, config, areaScale, 1);
+		return ranked.isEmpty() ? null : ranked.get(0);
+	}
+
+	private void siftUp(int index) {
+		Candidate candidate = heap[index];
+		while (index > 0) {
+			int parent = (index - 1) / 2;
+			if (heap[parent].score <= candidate.score) {
+				break;
+			}
+			heap[index] = heap[parent];
+			index = parent;
+		}
+		heap[index] = candidate;
+	}
+
+	private void siftDown(int index, int size) {
+		Candidate candidate = heap[index];
+		while (true) {
+			int child = 2 * index + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && heap[child + 1].score < heap[child].score) {
+				child++;
+			}
+			if (candidate.score <= heap[child].score) {
+				break;
+			}
+			heap[index] = heap[child];
+			index = child;
+		}
+		heap[index] = candidate;
+	}
+
+	private double hullArea(MatOfPoint contour) {
+		int count = (int) contour.total();
+		points = ContourGeometry.toArray(contour, points);
+		Imgproc.convexHull(contour, hull);
+		int hullCount = (int) hull.total();
+		if (hullIndices.length < hullCount) {
+			hullIndices = new int[Math.max(hullCount, hullIndices.length * 2)];
+		}
+		hull.get(0, 0, hullIndices);
+		return ContourGeometry.polygonArea(points, count, hullIndices, hullCount);
+	}
+
+	private static double[] huMoments(Moments moments, Mat hu, double[] into) {
+		Imgproc.HuMoments(moments, hu);
+		hu.get(0, 0, into);
+		return into;
+	}
+
+	/**
+	 * Sum of the differences between the log scaled Hu moments, as Imgproc.CV_CONTOURS_MATCH_I2
+	 * but without recomputing the template's moments each time, and with two changes that keep
+	 * symmetric shapes from looking alike: only the first four moments are compared, since the
+	 * rest are close to zero with a sign that flips with noise for anything roughly symmetric,
+	 * and moments too small to measure count as the smallest measurable value rather than
+	 * being skipped, so a plain rectangle doesn't match everything.
+	 */
+	static double shapeDistance(double[] a, double[] b) {
+		double distance = 0;
+		for (int i = 0; i < COMPARED_HU_MOMENTS; i++) {
+			distance += Math.abs(logScale(a[i]) - logScale(b[i]));
+		}
+		return distance;
+	}
+
+	private static double logScale(double hu) {
+		return (hu < 0 ? -1 : 1) * Math.log10(Math.max(Math.abs(hu), HU_EPSILON));
+	}
+
+	/**
+	 * A contour that passed every check, with what was measured on the way.
+	 */
+	public static class Candidate {
+
+		private MatOfPoint contour;
+		private double area;
+		private Rect boundingRect;
+		private double solidity;
+		private double shapeDistance;
+		private double score;
+
+		public MatOfPoint getContour() {
+			return contour;
+		}
+
+		public double getArea() {
+			return area;
+		}
+
+		public Rect getBoundingRect() {
+			return boundingRect;
+		}
+
+		public double getSolidity() {
+			return solidity;
+		}
+
+		/**
+		 * @return how far the shape's Hu moments are from the template's, 0 for the same shape
+		 */
+		public double getShapeDistance() {
+			return shapeDistance;
+		}
+
+		public double getScore() {
+			return score;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides whether a frame is close enough to the last fully processed one that its result
+ * still holds, e.g. while the robot sits still lining up a shot. Each frame is reduced to a
+ * signature of a few hundred cell averages; the frame counts as unchanged while no cell has
+ * moved more than the tolerance from the reference and the config is the same snapshot.
+ *
+ * The reference is only replaced by a processed frame, so a slow drift still adds up to a
+ * change, and at most a given number of frames in a row are skipped.
+ *
+ * Only used from the processing thread.
+ */
+public class ChangeDetector {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ChangeDetector.class);
+
+	// cells across and down the signature, each averaging a block of the frame
+	private static final int SIGNATURE_COLS = 16;
+	private static final int SIGNATURE_ROWS = 12;
+
+	private final Size signatureSize = new Size(SIGNATURE_COLS, SIGNATURE_ROWS);
+	private final Mat signatureImage = new Mat();
+	private byte[] signature = new byte[0];
+	private byte[] reference = new byte[0];
+	private int signatureLength;
+	private int referenceLength;
+	private VisionConfig referenceConfig;
+	private int skipped;
+	private long totalSkipped;
+
+	/**
+	 * Take the signature of the frame, before {@link #isUnchanged} or {@link #processed}.
+	 */
+	public void sample(Mat frame) {
+		Imgproc.resize(frame, signatureImage, signatureSize, 0, 0, Imgproc.INTER_AREA);
+		signatureLength = (int) (signatureImage.total() * signatureImage.channels());
+		if (signature.length != signatureLength) {
+			signature = new byte[signatureLength];
+		}
+		signatureImage.get(0, 0, signature);
+	}
+
+	/**
+	 * @param tolerance the largest change in any cell, in pixel levels, still counted as the same scene
+	 * @param maxSkips frames in a row that can reuse a result before one is processed anyway
+	 * @return true if the last sampled frame can reuse the reference frame's result
+	 */
+	public boolean isUnchanged(VisionConfig config, int tolerance, int maxSkips) {
+		if (referenceConfig != config || referenceLength != signatureLength || skipped >= maxSkips) {
+			return false;
+		}
+		if (maxDifference(signature, reference, signatureLength) > tolerance) {
+			return false;
+		}
+		if (skipped++ == 0) {
+			LOG.debug("Scene unchanged, reusing the last result");
+		}
+		totalSkipped++;
+		return true;
+	}
+
+	/**
+	 * The last sampled frame was processed in full with the config, compare the next ones with it.
+	 */
+	public void processed(VisionConfig config) {
+		byte[] swap = reference;
+		reference = signature;
+		signature = swap;
+		referenceLength = signatureLength;
+		referenceConfig = config;
+		skipped = 0;
+	}
+
+	/**
+	 * Compare the next frame with nothing, so it is processed in full.
+	 */
+	public void reset() {
+		referenceConfig = null;
+		skipped = 0;
+	}
+
+	/**
+	 * @return frames that reused a result since the detector was created
+	 */
+	public long getSkippedFrames() {
+		return totalSkipped;
+	}
+
+	static int maxDifference(byte[] a, byte[] b, int length) {
+		int max = 0;
+		for (int i = 0; i < length; i++) {
+			int difference = Math.abs((a[i] & 0xff) - (b[i] & 0xff));
+			if (difference > max) {
+				max = difference;
+			}
+		}
+		return max;
+	}
+}
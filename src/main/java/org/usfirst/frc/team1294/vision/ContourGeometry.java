@@ -0,0 +1,88 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.MatOfPoint;
+
+/**
+ * Geometry helpers that work on contours flattened into a plain {@code int[]} of
+ * interleaved x,y coordinates, so the points can be scanned without a JNI call per point.
+ */
+public final class ContourGeometry {
+
+	private ContourGeometry() {
+	}
+
+	/**
+	 * Copy all points of the contour into an interleaved x,y array with a single native copy.
+	 *
+	 * @param reuse array to copy into if it is big enough, may be null
+	 * @return the array holding the points, either reuse or a larger replacement
+	 */
+	public static int[] toArray(MatOfPoint contour, int[] reuse) {
+		int length = (int) contour.total() * 2;
+		int[] points = reuse;
+		if (points == null || points.length < length) {
+			points = new int[Math.max(length, reuse == null ? 0 : reuse.length * 2)];
+		}
+		if (length > 0) {
+			contour.get(0, 0, points);
+		}
+		return points;
+	}
+
+	/**
+	 * Find the contour points closest to the upper left (left, top) and upper right
+	 * (right, top) corners of its bounding rectangle in one pass.
+	 *
+	 * @param points interleaved x,y coordinates
+	 * @param count number of points in the array, must be at least 1
+	 * @param corners receives upper left x, upper left y, upper right x, upper right y
+	 */
+	public static void findUpperCorners(int[] points, int count, int left, int right, int top, int[] corners) {
+		long minDistanceUpperLeft = Long.MAX_VALUE;
+		long minDistanceUpperRight = Long.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			int px = points[2 * i];
+			int py = points[2 * i + 1];
+
+			long dUpperLeft = distanceSquared(px, py, left, top);
+			if (dUpperLeft < minDistanceUpperLeft) {
+				minDistanceUpperLeft = dUpperLeft;
+				corners[0] = px;
+				corners[1] = py;
+			}
+
+			long dUpperRight = distanceSquared(px, py, right, top);
+			if (dUpperRight < minDistanceUpperRight) {
+				minDistanceUpperRight = dUpperRight;
+				corners[2] = px;
+				corners[3] = py;
+			}
+		}
+	}
+
+	public static long distanceSquared(int x1, int y1, int x2, int y2) {
+		long dx = x1 - x2;
+		long dy = y1 - y2;
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * @param points interleaved x,y coordinates
+	 * @param count number of points in the array
+	 * @param indices the polygon's vertices as indexes into points, in order, e.g. a convex hull
+	 * @param indexCount number of vertices
+	 * @return area enclosed by the polygon
+	 */
+	public static double polygonArea(int[] points, int count, int[] indices, int indexCount) {
+		long twiceArea = 0;
+		for (int i = 0, j = indexCount - 1; i < indexCount; j = i++) {
+			int a = indices[j];
+			int b = indices[i];
+			if (a >= count || b >= count) {
+				throw new IllegalArgumentException("Vertex index out of range");
+			}
+			twiceArea += (long) points[2 * a] * points[2 * b + 1] - (long) points[2 * b] * points[2 * a + 1];
+		}
+		return Math.abs(twiceArea) / 2.0;
+	}
+}
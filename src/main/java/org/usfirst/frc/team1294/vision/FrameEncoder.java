@@ -0,0 +1,113 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.function.Consumer;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * JPEG-encodes annotated frames on its own thread so the processing loop never waits on
+ * compression. Only one frame is held at a time: a frame submitted while the previous one
+ * is still being encoded is dropped.
+ */
+public class FrameEncoder implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FrameEncoder.class);
+
+	private final Consumer<byte[]> output;
+	private final PipelineMetrics metrics;
+	private final Mat pending = new Mat();
+	private final MatOfByte jpegBuffer = new MatOfByte();
+	private final int[] encodeParameterValues = { Imgcodecs.IMWRITE_JPEG_QUALITY, -1 };
+	private final MatOfInt encodeParameters = new MatOfInt(encodeParameterValues);
+
+	// guarded by this
+	private boolean busy;
+	private int pendingQuality;
+
+	private volatile long droppedFrames;
+	private Thread thread;
+
+	/**
+	 * @param output receives each encoded image on the encoder thread
+	 */
+	public FrameEncoder(Consumer<byte[]> output, PipelineMetrics metrics) {
+		this.output = output;
+		this.metrics = metrics;
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this, "encoder-thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Copy the frame for encoding if the encoder is idle, otherwise drop it.
+	 *
+	 * @return true if the frame was accepted
+	 */
+	public synchronized boolean submit(Mat frame, int quality) {
+		if (busy) {
+			droppedFrames++;
+			return false;
+		}
+		frame.copyTo(pending);
+		pendingQuality = quality;
+		busy = true;
+		notifyAll();
+		return true;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			int quality;
+			synchronized (this) {
+				while (!busy) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				quality = pendingQuality;
+			}
+
+			try {
+				long start = System.nanoTime();
+				// pending is not touched by submit() until busy is cleared below
+				if (quality != encodeParameterValues[1]) {
+					encodeParameterValues[1] = quality;
+					encodeParameters.put(0, 0, encodeParameterValues);
+				}
+				Imgcodecs.imencode(".jpg", pending, jpegBuffer, encodeParameters);
+				// consumers hold on to the published array, so it has to be a fresh one
+				byte[] jpeg = new byte[(int) jpegBuffer.total()];
+				jpegBuffer.get(0, 0, jpeg);
+				metrics.record(PipelineMetrics.Stage.ENCODE, System.nanoTime() - start);
+				output.accept(jpeg);
+			} catch (Exception e) {
+				LOG.error("Error while encoding image", e);
+			}
+
+			synchronized (this) {
+				busy = false;
+			}
+		}
+	}
+
+	/**
+	 * @return frames submitted while the previous one was still being encoded
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+}
@@ -0,0 +1,112 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads frames from a {@link FrameSource} on its own thread so the blocking read is
+ * never on the processing path. Frames are handed to the processing thread through a
+ * {@link TripleBuffer} of preallocated Mats, so the processor always gets the newest
+ * frame without either side waiting.
+ */
+public class FrameGrabber implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FrameGrabber.class);
+
+	private static final long RETRY_DELAY_MS = 100;
+
+	private final FrameSource source;
+	private final PipelineMetrics metrics;
+	private final TripleBuffer<Mat> frames = new TripleBuffer<>(Mat::new);
+
+	private volatile boolean running;
+	private Thread thread;
+
+	public FrameGrabber(FrameSource source, PipelineMetrics metrics) {
+		this.source = source;
+		this.metrics = metrics;
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		running = true;
+		thread = new Thread(this, "capture-thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public synchronized void stop() {
+		running = false;
+		if (thread != null) {
+			thread.interrupt();
+			thread = null;
+		}
+	}
+
+	@Override
+	public void run() {
+		while (running) {
+			long captureNanos;
+			try {
+				long start = System.nanoTime();
+				boolean read = source.read(frames.back());
+				long end = System.nanoTime();
+				metrics.record(PipelineMetrics.Stage.CAPTURE, end - start);
+				long captured = source.getCaptureNanos();
+				captureNanos = captured != 0 ? captured : end;
+				if (!read) {
+					LOG.warn("Could not read frame from source");
+					TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS);
+					continue;
+				}
+			} catch (InterruptedException e) {
+				break;
+			} catch (Exception e) {
+				LOG.error("Error while capturing frame", e);
+				continue;
+			}
+			frames.publish(captureNanos);
+		}
+		source.close();
+	}
+
+	/**
+	 * Take the newest frame captured since the last call. The returned Mat belongs to
+	 * the caller until the next call to this method.
+	 *
+	 * @return the newest frame, or null if nothing new has been captured
+	 */
+	public Mat nextFrame() {
+		return frames.take();
+	}
+
+	/**
+	 * @return the capture sequence number of the frame last returned by {@link #nextFrame()}
+	 */
+	public long getFrameSequence() {
+		return frames.getSequence();
+	}
+
+	/**
+	 * @return System.nanoTime() when the frame last returned by {@link #nextFrame()} was captured
+	 */
+	public long getFrameCaptureNanos() {
+		return frames.getTimestamp();
+	}
+
+	public long getCapturedFrames() {
+		return frames.getPublishedItems();
+	}
+
+	/**
+	 * @return number of frames that were captured but replaced by a newer one before processing
+	 */
+	public long getSkippedFrames() {
+		return frames.getSkippedItems();
+	}
+}
@@ -0,0 +1,59 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Layout of the frame log files written by the {@link MatchRecorder}. All values are big
+ * endian.
+ *
+ * <pre>
+ * header  (32 bytes)  magic "VLOG", version, created (wall clock ms), width, height, reserved
+ * record  (49 bytes + jpeg) magic "VREC", sequence, lastUpdated, captureTime, acquired (byte),
+ *                     x, y, latency (double ms), jpeg length, jpeg bytes
+ * ...
+ * index   (16 bytes per record) record offset, captureTime
+ * footer  (16 bytes)  index offset, record count, magic "VIDX"
+ * </pre>
+ *
+ * The index and footer are only written when a segment is closed cleanly; without them the
+ * records are found by scanning from the header, so a log cut short by a power loss still
+ * reads up to its last whole record.
+ */
+public final class FrameLog {
+
+	public static final String EXTENSION = ".vlog";
+
+	public static final int MAGIC = 0x564C4F47; // VLOG
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 32;
+
+	public static final int RECORD_MAGIC = 0x56524543; // VREC
+	public static final int RECORD_HEADER_BYTES = 49;
+	// offset of the jpeg length within a record
+	public static final int RECORD_JPEG_LENGTH_OFFSET = RECORD_HEADER_BYTES - 4;
+
+	public static final int INDEX_ENTRY_BYTES = 16;
+	public static final int FOOTER_MAGIC = 0x56494458; // VIDX
+	public static final int FOOTER_BYTES = 16;
+
+	private FrameLog() {
+	}
+
+	/**
+	 * @param path a frame log or a directory of them
+	 * @return the frame logs, oldest first
+	 */
+	public static File[] listLogs(File path) {
+		if (!path.isDirectory()) {
+			return new File[] { path };
+		}
+		File[] found = path.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if (found == null) {
+			return new File[0];
+		}
+		// named after the time recording started and the segment number
+		Arrays.sort(found);
+		return found;
+	}
+}
@@ -0,0 +1,154 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the frames in a {@link FrameLog} written by the {@link MatchRecorder}, or in all
+ * the logs in a directory, oldest first, as one run of frames numbered from 0. Each log is
+ * opened with a {@link FrameLogReader}, so the replay can start at any frame or time.
+ */
+public class FrameLogFrameSource implements FrameSource {
+
+	private static final Logger LOG = LoggerFactory.getLogger(FrameLogFrameSource.class);
+
+	private final List<FrameLogReader> readers = new ArrayList<>();
+	private long frameCount;
+	private int reader;
+	private int next;
+	private long lastFrame = Long.MAX_VALUE;
+	private long lastTime = Long.MAX_VALUE;
+	private TargetResult recordedResult;
+	// maps recorded wall clock capture times onto System.nanoTime(), set by the first frame read
+	private long captureOffsetNanos = Long.MIN_VALUE;
+	private long captureNanos;
+
+	public FrameLogFrameSource(File path) {
+		for (File file : FrameLog.listLogs(path)) {
+			try {
+				FrameLogReader log = new FrameLogReader(file);
+				if (!log.isIndexed()) {
+					LOG.warn("{} was not closed cleanly, found {} whole frames", file, log.getFrameCount());
+				}
+				readers.add(log);
+				frameCount += log.getFrameCount();
+			} catch (IOException e) {
+				LOG.error("Could not open {}", file, e);
+			}
+		}
+	}
+
+	/**
+	 * Only replay frames first to last inclusive, counting from 0 across all the logs.
+	 */
+	public void setFrameRange(long first, long last) {
+		lastFrame = last;
+		lastTime = Long.MAX_VALUE;
+		reader = 0;
+		next = 0;
+		long skip = Math.max(0, first);
+		while (reader < readers.size() && skip >= readers.get(reader).getFrameCount()) {
+			skip -= readers.get(reader).getFrameCount();
+			reader++;
+		}
+		next = (int) skip;
+	}
+
+	/**
+	 * Only replay frames captured between the wall clock times in milliseconds, inclusive.
+	 */
+	public void setTimeRange(long from, long to) {
+		lastFrame = Long.MAX_VALUE;
+		lastTime = to;
+		reader = 0;
+		next = 0;
+		while (reader < readers.size()) {
+			FrameLogReader log = readers.get(reader);
+			next = log.findFrame(from);
+			if (next < log.getFrameCount()) {
+				return;
+			}
+			reader++;
+		}
+		// past the end of the last log
+		next = 0;
+	}
+
+	@Override
+	public boolean read(Mat frame) {
+		while (reader < readers.size()) {
+			FrameLogReader log = readers.get(reader);
+			if (next >= log.getFrameCount()) {
+				reader++;
+				next = 0;
+				continue;
+			}
+			if (getFrameNumber() > lastFrame || log.getCaptureTime(next) > lastTime) {
+				return false;
+			}
+			int n = next++;
+			if (log.readFrame(n, frame)) {
+				recordedResult = log.getResult(n);
+				long recordedNanos = TimeUnit.MILLISECONDS.toNanos(log.getCaptureTime(n));
+				if (captureOffsetNanos == Long.MIN_VALUE) {
+					captureOffsetNanos = System.nanoTime() - recordedNanos;
+				}
+				captureNanos = recordedNanos + captureOffsetNanos;
+				return true;
+			}
+			LOG.warn("Could not decode frame {} of {}", n, log.getFile());
+		}
+		return false;
+	}
+
+	/**
+	 * @return when the frame last read was captured, as System.nanoTime() with the first frame
+	 *         read taken as now and the recorded spacing between frames kept after that
+	 */
+	@Override
+	public long getCaptureNanos() {
+		return captureNanos;
+	}
+
+	/**
+	 * @return the number, counting from 0 across all the logs, of the next frame to be read
+	 */
+	public long getFrameNumber() {
+		long number = next;
+		for (int i = 0; i < reader && i < readers.size(); i++) {
+			number += readers.get(i).getFrameCount();
+		}
+		return number;
+	}
+
+	/**
+	 * @return frames in all the logs
+	 */
+	public long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return the result recorded with the frame last read
+	 */
+	public TargetResult getRecordedResult() {
+		return recordedResult;
+	}
+
+	@Override
+	public void close() {
+		for (FrameLogReader log : readers) {
+			log.close();
+		}
+		readers.clear();
+		reader = 0;
+		next = 0;
+	}
+}
@@ -0,0 +1,240 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Random access to the records of one {@link FrameLog} through a read-only memory map, so
+ * going to frame N or to a time only touches the pages of the records read rather than
+ * everything before them.
+ *
+ * The offsets come from the index when the log was closed cleanly, otherwise from a scan
+ * of the record headers that stops at the first incomplete record.
+ */
+public class FrameLogReader implements Closeable {
+
+	private final File file;
+	private MappedByteBuffer buffer;
+	private final int width;
+	private final int height;
+	private final long created;
+	private final boolean indexed;
+	private int[] offsets;
+	private long[] captureTimes;
+	private int count;
+
+	// decode scratch, reused from frame to frame and only created once a frame is decoded
+	private byte[] jpeg = new byte[0];
+	private MatOfByte jpegMat;
+
+	public FrameLogReader(File file) throws IOException {
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+			// the mapping stays valid once the channel is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		if (buffer.limit() < FrameLog.HEADER_BYTES || buffer.getInt(0) != FrameLog.MAGIC) {
+			throw new IOException(file + " is not a frame log");
+		}
+		if (buffer.getInt(4) != FrameLog.VERSION) {
+			throw new IOException(file + " is frame log version " + buffer.getInt(4) + ", not " + FrameLog.VERSION);
+		}
+		created = buffer.getLong(8);
+		width = buffer.getInt(16);
+		height = buffer.getInt(20);
+		indexed = readIndex();
+		if (!indexed) {
+			scanRecords();
+		}
+	}
+
+	private boolean readIndex() {
+		int size = buffer.limit();
+		if (size < FrameLog.HEADER_BYTES + FrameLog.FOOTER_BYTES
+				|| buffer.getInt(size - 4) != FrameLog.FOOTER_MAGIC) {
+			return false;
+		}
+		long indexOffset = buffer.getLong(size - FrameLog.FOOTER_BYTES);
+		int indexCount = buffer.getInt(size - 8);
+		if (indexCount < 0 || indexOffset + (long) indexCount * FrameLog.INDEX_ENTRY_BYTES + FrameLog.FOOTER_BYTES != size) {
+			return false;
+		}
+		offsets = new int[indexCount];
+		captureTimes = new long[indexCount];
+		for (int i = 0; i < indexCount; i++) {
+			int entry = (int) indexOffset + i * FrameLog.INDEX_ENTRY_BYTES;
+			offsets[i] = (int) buffer.getLong(entry);
+			captureTimes[i] = buffer.getLong(entry + 8);
+		}
+		count = indexCount;
+		return true;
+	}
+
+	private void scanRecords() {
+		offsets = new int[256];
+		captureTimes = new long[256];
+		int size = buffer.limit();
+		int position = FrameLog.HEADER_BYTES;
+		while (position + FrameLog.RECORD_HEADER_BYTES <= size && buffer.getInt(position) == FrameLog.RECORD_MAGIC) {
+			int length = buffer.getInt(position + FrameLog.RECORD_JPEG_LENGTH_OFFSET);
+			if (length < 0 || (long) position + FrameLog.RECORD_HEADER_BYTES + length > size) {
+				break;
+			}
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				captureTimes = Arrays.copyOf(captureTimes, count * 2);
+			}
+			offsets[count] = position;
+			captureTimes[count] = buffer.getLong(position + 20);
+			count++;
+			position += FrameLog.RECORD_HEADER_BYTES + length;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public int getFrameCount() {
+		return count;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return wall clock time in milliseconds the log was started
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+	/**
+	 * @return false if the log wasn't closed cleanly and its records had to be scanned for
+	 */
+	public boolean isIndexed() {
+		return indexed;
+	}
+
+	/**
+	 * @return wall clock time in milliseconds frame n was captured
+	 */
+	public long getCaptureTime(int n) {
+		return captureTimes[n];
+	}
+
+	// field offsets within a record follow the layout in FrameLog
+
+	public long getSequence(int n) {
+		return mapped().getLong(offsets[n] + 4);
+	}
+
+	/**
+	 * @return the result the pipeline published for frame n when it was recorded
+	 */
+	public TargetResult getResult(int n) {
+		ByteBuffer map = mapped();
+		int record = offsets[n];
+		return new TargetResult(map.get(record + 28) != 0, map.getInt(record + 29), map.getInt(record + 33),
+				map.getLong(record + 12), map.getLong(record + 20), map.getDouble(record + 37));
+	}
+
+	/**
+	 * @return a view of frame n's JPEG bytes in the mapped file, without copying them
+	 */
+	public ByteBuffer getJpeg(int n) {
+		ByteBuffer map = mapped();
+		int record = offsets[n];
+		ByteBuffer jpegView = map.duplicate();
+		jpegView.position(record + FrameLog.RECORD_HEADER_BYTES);
+		jpegView.limit(record + FrameLog.RECORD_HEADER_BYTES + map.getInt(record + FrameLog.RECORD_JPEG_LENGTH_OFFSET));
+		return jpegView.slice();
+	}
+
+	/**
+	 * Decode frame n into the given Mat.
+	 *
+	 * @return false if the JPEG could not be decoded
+	 */
+	public boolean readFrame(int n, Mat frame) {
+		ByteBuffer jpegView = getJpeg(n);
+		int length = jpegView.remaining();
+		if (jpeg.length < length) {
+			jpeg = new byte[length];
+		}
+		// OpenCV's Java API only takes arrays, so this is the one copy on the way to the decoder
+		jpegView.get(jpeg, 0, length);
+		if (jpegMat == null) {
+			jpegMat = new MatOfByte();
+		}
+		jpegMat.alloc(length);
+		jpegMat.put(0, 0, jpeg);
+		Mat image = Imgcodecs.imdecode(jpegMat, Imgcodecs.IMREAD_COLOR);
+		try {
+			if (image.empty()) {
+				return false;
+			}
+			image.copyTo(frame);
+			return true;
+		} finally {
+			image.release();
+		}
+	}
+
+	/**
+	 * @return the first frame captured at or after the given wall clock time in milliseconds,
+	 *         or the frame count if there is none
+	 */
+	public int findFrame(long captureTime) {
+		int low = 0;
+		int high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (captureTimes[middle] < captureTime) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private ByteBuffer mapped() {
+		if (buffer == null) {
+			throw new IllegalStateException(file + " is closed");
+		}
+		return buffer;
+	}
+
+	/**
+	 * Drop the reference to the map. Java can't unmap it directly, so the file stays mapped
+	 * until the buffer is garbage collected. The frame count and capture times can still be
+	 * read afterwards, but reading a record throws an IllegalStateException.
+	 */
+	@Override
+	public void close() {
+		buffer = null;
+		if (jpegMat != null) {
+			jpegMat.release();
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends frames and their results to one frame log segment, see {@link FrameLog} for the
+ * layout. Each record is flushed as it is written, and the index is added on close.
+ *
+ * A flush only hands the record to the operating system, which survives the vision process
+ * crashing but not a power cut. The file is also synced to the card at most once every
+ * {@link #SYNC_INTERVAL_NANOS}, so a power cut loses about that much of the log at most.
+ */
+public class FrameLogWriter implements Closeable {
+
+	// a sync can stall for tens of ms on an SD card, which the recorder thread can afford once a second
+	private static final long SYNC_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final File file;
+	private final FileOutputStream fileOut;
+	private final DataOutputStream out;
+	private long lastSyncNanos;
+	private long position;
+	private long[] offsets = new long[256];
+	private long[] captureTimes = new long[256];
+	private int count;
+
+	public FrameLogWriter(File file, int width, int height) throws IOException {
+		this.file = file;
+		this.fileOut = new FileOutputStream(file);
+		this.out = new DataOutputStream(new BufferedOutputStream(fileOut, 64 * 1024));
+		out.writeInt(FrameLog.MAGIC);
+		out.writeInt(FrameLog.VERSION);
+		out.writeLong(System.currentTimeMillis());
+		out.writeInt(width);
+		out.writeInt(height);
+		out.write(new byte[FrameLog.HEADER_BYTES - 24]);
+		out.flush();
+		position = FrameLog.HEADER_BYTES;
+		lastSyncNanos = System.nanoTime();
+	}
+
+	/**
+	 * @param jpeg the encoded frame, of which the first length bytes are written
+	 */
+	public void append(long sequence, TargetResult result, byte[] jpeg, int length) throws IOException {
+		if (count == offsets.length) {
+			offsets = Arrays.copyOf(offsets, count * 2);
+			captureTimes = Arrays.copyOf(captureTimes, count * 2);
+		}
+		offsets[count] = position;
+		captureTimes[count] = result.getCaptureTimestamp();
+		count++;
+
+		out.writeInt(FrameLog.RECORD_MAGIC);
+		out.writeLong(sequence);
+		out.writeLong(result.getTimestamp());
+		out.writeLong(result.getCaptureTimestamp());
+		out.writeByte(result.isAcquired() ? 1 : 0);
+		out.writeInt(result.getX());
+		out.writeInt(result.getY());
+		out.writeDouble(result.getLatencyMillis());
+		out.writeInt(length);
+		out.write(jpeg, 0, length);
+		out.flush();
+		position += FrameLog.RECORD_HEADER_BYTES + length;
+		long now = System.nanoTime();
+		if (now - lastSyncNanos >= SYNC_INTERVAL_NANOS) {
+			fileOut.getFD().sync();
+			lastSyncNanos = now;
+		}
+	}
+
+	/**
+	 * @return bytes written so far
+	 */
+	public long size() {
+		return position;
+	}
+
+	public int getFrameCount() {
+		return count;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			long indexOffset = position;
+			for (int i = 0; i < count; i++) {
+				out.writeLong(offsets[i]);
+				out.writeLong(captureTimes[i]);
+			}
+			out.writeLong(indexOffset);
+			out.writeInt(count);
+			out.writeInt(FrameLog.FOOTER_MAGIC);
+			out.flush();
+			fileOut.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the processing loop against a fixed schedule of frame deadlines measured on a
+ * monotonic clock, so the rate doesn't drift with how long each frame takes.
+ *
+ * Each processed frame moves the next deadline on by one period. A frame that finishes
+ * after the next deadline is an overrun: the deadlines it ran past are counted as missed
+ * and the schedule restarts from now instead of trying to catch up with a burst of frames.
+ * An fps of zero or less runs frames back to back.
+ *
+ * Only called from the processing thread; the counters may be read from any thread.
+ */
+public class FramePacer {
+
+	/**
+	 * Source of monotonic time, replaceable so the pacing can be driven by hand.
+	 */
+	public interface Clock {
+		long nanoTime();
+	}
+
+	private static final long UNSET = Long.MIN_VALUE;
+
+	private final Clock clock;
+	private long period;
+	private long nextDeadline = UNSET;
+
+	private volatile long frames;
+	private volatile long overruns;
+	private volatile long missedDeadlines;
+
+	public FramePacer() {
+		this(System::nanoTime);
+	}
+
+	FramePacer(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * Record that a frame has been processed and work out when the next one should start.
+	 *
+	 * @param fps the target rate, zero or less for as fast as possible
+	 * @return nanoseconds to wait before starting the next frame
+	 */
+	public long frameDone(int fps) {
+		long now = clock.nanoTime();
+		frames++;
+		long newPeriod = fps > 0 ? TimeUnit.SECONDS.toNanos(1) / fps : 0;
+		if (newPeriod == 0) {
+			period = 0;
+			nextDeadline = UNSET;
+			return 0;
+		}
+		if (nextDeadline == UNSET || newPeriod != period) {
+			// first frame, or the rate changed: start a new schedule from this frame
+			period = newPeriod;
+			nextDeadline = now;
+		}
+		nextDeadline += period;
+
+		long late = now - nextDeadline;
+		if (late > 0) {
+			overruns++;
+			missedDeadlines += 1 + late / period;
+			nextDeadline = now;
+			return 0;
+		}
+		return -late;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	/**
+	 * @return frames that finished after the deadline for starting the next one
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+
+	/**
+	 * @return frame deadlines that passed without a frame being started
+	 */
+	public long getMissedDeadlines() {
+		return missedDeadlines;
+	}
+}
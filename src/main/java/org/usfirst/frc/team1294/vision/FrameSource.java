@@ -0,0 +1,33 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * Something that produces BGR frames for the vision pipeline, e.g. the webcam.
+ */
+public interface FrameSource {
+
+	/**
+	 * Read the next frame into the given Mat, reusing its buffer when the size matches.
+	 *
+	 * @return false if no frame could be read
+	 */
+	boolean read(Mat frame);
+
+	/**
+	 * @return System.nanoTime() when the frame last read was captured, or 0 if the source can't
+	 *         tell any closer than the return from {@link #read(Mat)}
+	 */
+	default long getCaptureNanos() {
+		return 0;
+	}
+
+	/**
+	 * @return true if this is a live camera whose brightness and exposure we control
+	 */
+	default boolean isLive() {
+		return false;
+	}
+
+	void close();
+}
@@ -0,0 +1,40 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Thresholds by converting the whole frame to HLS and running inRange over it.
+ */
+public class HlsThresholdEngine implements ThresholdEngine {
+
+	private final PipelineMetrics metrics;
+	private final Mat hslImage = new Mat();
+	private final Scalar thresholdLow = new Scalar(0, 0, 0);
+	private final Scalar thresholdHigh = new Scalar(0, 0, 0);
+
+	public HlsThresholdEngine(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public void apply(Mat frame, VisionConfig config, Mat mask) {
+		// convert it to HSL
+		long start = System.nanoTime();
+		Imgproc.cvtColor(frame, hslImage, Imgproc.COLOR_BGR2HLS);
+		long converted = System.nanoTime();
+		metrics.record(PipelineMetrics.Stage.CONVERT, converted - start);
+
+		// mask out only those pixels in the HSL range
+		thresholdLow.val[0] = config.getThresholdLowH();
+		thresholdLow.val[1] = config.getThresholdLowL();
+		thresholdLow.val[2] = config.getThresholdLowS();
+		thresholdHigh.val[0] = config.getThresholdHighH();
+		thresholdHigh.val[1] = config.getThresholdHighL();
+		thresholdHigh.val[2] = config.getThresholdHighS();
+		Core.inRange(hslImage, thresholdLow, thresholdHigh, mask);
+		metrics.record(PipelineMetrics.Stage.THRESHOLD, System.nanoTime() - converted);
+	}
+}
@@ -0,0 +1,53 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replays the .jpg and .png images in a directory, in file name order, such as the
+ * frames saved with captureNextFrame.
+ */
+public class ImageDirectoryFrameSource implements FrameSource {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ImageDirectoryFrameSource.class);
+
+	private final File[] files;
+	private int next;
+
+	public ImageDirectoryFrameSource(File directory) {
+		File[] found = directory.listFiles((dir, name) -> {
+			String lower = name.toLowerCase();
+			return lower.endsWith(".jpg") || lower.endsWith(".png");
+		});
+		files = found == null ? new File[0] : found;
+		Arrays.sort(files);
+	}
+
+	@Override
+	public boolean read(Mat frame) {
+		while (next < files.length) {
+			File file = files[next++];
+			Mat image = Imgcodecs.imread(file.getAbsolutePath());
+			try {
+				if (!image.empty()) {
+					image.copyTo(frame);
+					return true;
+				}
+				LOG.warn("Could not read image {}", file);
+			} finally {
+				image.release();
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void close() {
+		next = files.length;
+	}
+}
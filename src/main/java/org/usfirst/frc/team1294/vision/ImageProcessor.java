@@ -1,27 +1,24 @@
 package org.usfirst.frc.team1294.vision;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
-import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
-import org.opencv.core.MatOfInt;
 import org.opencv.core.MatOfPoint;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
+import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.videoio.VideoCapture;
-import org.opencv.videoio.Videoio;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,188 +27,559 @@ public class ImageProcessor implements Runnable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(ImageProcessor.class);
 	
-	private AtomicReference<byte[]> lastImage = new AtomicReference<byte[]>();
+	private AtomicReference<JpegFrame> lastImage = new AtomicReference<JpegFrame>();
+	private final List<Consumer<JpegFrame>> frameListeners = new CopyOnWriteArrayList<>();
+	private long encodedFrames;
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final FrameEncoder encoder = new FrameEncoder(jpeg -> publishFrame(new JpegFrame(++encodedFrames, jpeg)), metrics);
+	private final AtomicInteger viewers = new AtomicInteger();
+	private final ThresholdEngine hlsThreshold = new HlsThresholdEngine(metrics);
+	private final ThresholdEngine lutThreshold = new LutThresholdEngine(metrics, hlsThreshold);
+	private final ThresholdEngine tiledThreshold = new TiledThresholdEngine(metrics);
 	private VisionNetworkTable visionTable;
 
-	private VideoCapture capture;
+	private FrameGrabber grabber;
+	private final boolean liveCamera;
+	private final CameraControlService cameraControl;
+	// filled in place every frame, lastResult points at it once the first frame is processed
+	private final TargetResult result = new TargetResult();
+	private volatile TargetResult lastResult;
+	private volatile TrackedTarget lastTrack = TrackedTarget.none();
+	private final TargetTracker targetTracker = new TargetTracker();
+	private final CandidateScorer candidateScorer = CandidateScorer.load();
+	// System.nanoTime() when originalImage was captured
+	private long frameCaptureNanos;
 	private Mat originalImage;
-	private Mat hslImage;
 	private Mat maskImage;
 	private Mat hierarchy;
 	
 	private ScheduledExecutorService scheduler;
-	private long lastRun;
+	private final FramePacer pacer = new FramePacer();
+	private final StreamGovernor streamGovernor;
 	
 	Scalar color_gray = new Scalar(160,160,160);
 	Scalar color_white = new Scalar(255,255,255);
 	Scalar color_red = new Scalar(0,0,255);
 	Scalar color_yellow = new Scalar(0,255,255);
+	Scalar color_blue = new Scalar(255,0,0);
+	Scalar color_black = new Scalar(0,0,0);
+	
+	private static final int ALLOCATION_LOG_INTERVAL = 100;
+	private static final long NO_FRAME_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+	// extra pixels around a downscaled candidate, per unit of scale
+	private static final int CANDIDATE_MARGIN = 2;
+	// regions smaller than this many downscaled pixels are searched at full resolution
+	private static final int MIN_COARSE_SIZE = 16;
+	
+	// working objects reused from frame to frame so the steady state doesn't churn the heap
+	private final List<MatOfPoint> contours = new ArrayList<>();
+	private final List<MatOfPoint> targetContours = new ArrayList<>(1);
+	private int[] contourPoints = new int[256];
+	private final int[] upperCorners = new int[4];
+	private final double[] pMidpoint = new double[2];
+	private final int[] otherCorners = new int[4];
+	private final double[] otherMidpoint = new double[2];
+	private final TargetList targetList = new TargetList();
+	private final Point drawUpperLeft = new Point();
+	private final Point drawUpperRight = new Point();
+	private final Point drawMidpoint = new Point();
+	private final Point drawRectTopLeft = new Point();
+	private final Point drawRectBottomRight = new Point();
+	private final RegionTracker regionTracker = new RegionTracker();
+	private final ChangeDetector changeDetector = new ChangeDetector();
+	private final MatchRecorder recorder = new MatchRecorder(MatchRecorder.defaultDirectory());
+	private final Point regionOffset = new Point();
+	private final Rect searchedRegion = new Rect();
+	private final Rect candidateRegion = new Rect();
+	private final Mat coarseImage = new Mat();
+	private final Size coarseSize = new Size();
+	private final Mat displayedMask = new Mat();
+	// the mask as shown on the stream, so the frame itself stays raw for the recorder
+	private final Mat maskView = new Mat();
+	// what the overlays are drawn on and the encoder is given: the frame, or the mask view
+	private Mat streamImage;
+	private final AllocationCounter allocationCounter = new AllocationCounter();
+	private long processedFrames;
 	
 	public ImageProcessor(int webcam, VisionNetworkTable visionTable) {
-		capture = new VideoCapture(webcam);
-		capture.set(Videoio.CAP_PROP_FRAME_WIDTH, 640); // width
-		capture.set(Videoio.CAP_PROP_FRAME_HEIGHT, 480); // height
-		
+		this(new CameraFrameSource(webcam), visionTable);
+	}
+	
+	public ImageProcessor(FrameSource frameSource, VisionNetworkTable visionTable) {
+		this.grabber = new FrameGrabber(frameSource, metrics);
+		this.liveCamera = frameSource.isLive();
+		this.cameraControl = liveCamera ? new CameraControlService(new V4l2CtlBackend()) : null;
 		this.visionTable = visionTable;
+		this.streamGovernor = new StreamGovernor(visionTable);
 		this.scheduler = Executors.newScheduledThreadPool(1);
 		
 		originalImage = new Mat();
-		hslImage = new Mat();
 		maskImage = new Mat();
 		hierarchy = new Mat();
 		
-		setCameraManualExposure();
-		setCameraAbsoluteExposure();
-		setCameraBrightness();
+		if (liveCamera) {
+			setCameraManualExposure();
+			setCameraAbsoluteExposure();
+			setCameraBrightness();
+		}
 		
 		System.out.println("ImageProcesser constructor done");
 	}
 	
 	public void start() {
-		long delay = (long) (1 / (double)visionTable.getFPS() * 1000);
-		if (delay < 0) delay = 0;
-		scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
-		this.lastRun = System.currentTimeMillis();
+		if (liveCamera) {
+			cameraControl.start();
+		}
+		grabber.start();
+		encoder.start();
+		recorder.start();
+		metrics.setPacer(pacer);
+		metrics.start(visionTable);
+		scheduler.schedule(this, 0, TimeUnit.NANOSECONDS);
 	}
 	
 	@Override
 	public void run() {
+		long delay = NO_FRAME_RETRY_NANOS;
 		try {
-			// grab a frame from the webcam
-			captureImage();
-			// process Image
-			processImage();
-			
-			originalImage.release();
-			hslImage.release();
-			maskImage.release();
-			hierarchy.release();
+			// take the newest frame from the capture thread
+			if (captureImage()) {
+				allocationCounter.begin();
+				long start = System.nanoTime();
+				// process Image
+				processImage();
+				streamGovernor.recordFrameTime(System.nanoTime() - start);
+				allocationCounter.end();
+				
+				if (++processedFrames % ALLOCATION_LOG_INTERVAL == 0 && allocationCounter.isSupported()) {
+					LOG.debug("Heap bytes allocated processing frame {}: {}", processedFrames, allocationCounter.getLastAllocatedBytes());
+				}
+				if (processedFrames % ALLOCATION_LOG_INTERVAL == 0) {
+					LOG.debug("Frames reusing an unchanged result: {} of {}", changeDetector.getSkippedFrames(), processedFrames);
+				}
+				delay = pacer.frameDone(visionTable.getConfig().getFPS());
+			}
 		} catch (Exception e) {
 			LOG.error("Error while processing image", e);
 		}
 		
-		// schedule the next run
-		long delay = (long) (1 / (double)visionTable.getFPS() * 1000) - (System.currentTimeMillis() - this.lastRun);
-		if (delay < 0) delay = 0;
-		scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
-		this.lastRun = System.currentTimeMillis();
+		// schedule the next run, or poll again shortly if the camera hasn't delivered a new frame yet
+		scheduler.schedule(this, delay, TimeUnit.NANOSECONDS);
 	}
 	
 	public void processImage() {
-		if (visionTable.isCaptureNextFrame()) {
+		// read the tunables once for the whole frame
+		VisionConfig config = visionTable.getConfig();
+		
+		if (config.isCaptureNextFrame()) {
 			visionTable.setCaptureNextFrame(false);
 			String filename = String.format("%s/%d.jpg", System.getProperty("user.dir"), System.currentTimeMillis());
-			saveImage(filename, originalImage);
+			// written on the recorder thread
+			recorder.saveSnapshot(originalImage, new File(filename));
 		}
 		
-		// convert it to HSL
-		Imgproc.cvtColor(originalImage, hslImage, Imgproc.COLOR_BGR2HLS);
-		
-		// mask out only those pixels in the HSL range
-		Core.inRange(
-				hslImage, 
-				new Scalar(visionTable.getThresholdLowH(), visionTable.getThresholdLowL(), visionTable.getThresholdLowS()),
-				new Scalar(visionTable.getThresholdHighH(), visionTable.getThresholdHighL(), visionTable.getThresholdHighS()),
-				maskImage);
+		// while the scene and the config stay the same the last result still holds
+		boolean changeGating = config.isChangeGating();
+		if (changeGating) {
+			long start = System.nanoTime();
+			changeDetector.sample(originalImage);
+			// a new viewer still needs a first frame
+			boolean unchanged = !(hasViewers() && lastImage.get() == null)
+					&& changeDetector.isUnchanged(config, config.getChangeTolerance(), config.getChangeMaxSkips());
+			recordStage(PipelineMetrics.Stage.CHANGE, start);
+			if (unchanged) {
+				republishResult(config);
+				return;
+			}
+		}
 		
-		// find all the contours
-		List<MatOfPoint> contours = new ArrayList<>();
-		if (visionTable.isDisplayMask()) {
-			maskImage.copyTo(originalImage, maskImage);
+		// after a lock only search the area around the last target, unless other targets are wanted too
+		int maxTargets = Math.max(1, config.getMaxTargets());
+		if (!config.isRoiTracking() || maxTargets > 1) {
+			regionTracker.reset();
 		}
-		Imgproc.findContours(maskImage, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		int cols = originalImage.cols();
+		int rows = originalImage.rows();
+		Rect searchRegion = regionTracker.getSearchRegion(cols, rows);
+		boolean tracking = regionTracker.isTracking();
+		// the tracker updates its region once this frame's result is in, keep a copy to draw
+		searchedRegion.x = searchRegion.x;
+		searchedRegion.y = searchRegion.y;
+		searchedRegion.width = searchRegion.width;
+		searchedRegion.height = searchRegion.height;
 		
-		//find the target contour TODO: much more logic needed here
-		Optional<MatOfPoint> targetContour = contours.stream()
-				.filter((c) -> {
-					Rect r = Imgproc.boundingRect(c);
-					return (r.width > r.height);
-				})
-				.filter(c -> shapeMatches(c))
-				.max(Comparator.comparing(c -> Imgproc.contourArea(c)));
+		// only annotate and encode the image when someone is watching the stream, at the rate the governor allows
+		boolean streaming = hasViewers() && shouldStream(config);
+		boolean displayMask = streaming && config.isDisplayMask();
 		
-		if (targetContour.isPresent()) {
-			Rect boundingRect = Imgproc.boundingRect(targetContour.get());
-			
-			// find upper left and upper right points on the contour
-			double[] pRectUpperLeft = new double[2];
-			pRectUpperLeft[0] = boundingRect.x;
-			pRectUpperLeft[1] = boundingRect.y;
-			
-			double[] pRectUpperRight = new double[2];
-			pRectUpperRight[0] = boundingRect.x + boundingRect.width;
-			pRectUpperRight[1] = boundingRect.y;
-			
-			double[] pUpperLeft = null;
-			double[] pUpperRight = null;
-			double minDistanceUpperLeft = Double.MAX_VALUE;
-			double minDistanceUpperRight = Double.MAX_VALUE;
-			
-			for(int col=0;col<targetContour.get().cols();col++) {
-				for (int row=0;row<targetContour.get().rows();row++) {
-					double[] p = targetContour.get().get(row, col);
-					
-					double dUpperLeft = distance(p, pRectUpperLeft);
-					if (dUpperLeft < minDistanceUpperLeft) {
-						minDistanceUpperLeft = dUpperLeft;
-						pUpperLeft = p;
-					}
-					
-					double dUpperRight = distance(p, pRectUpperRight);
-					if (dUpperRight < minDistanceUpperRight) {
-						minDistanceUpperRight = dUpperRight;
-						pUpperRight = p;
-					}
-				}
+		int scale = config.getPyramidScale();
+		if (scale > 1 && Math.min(searchedRegion.width, searchedRegion.height) >= scale * MIN_COARSE_SIZE) {
+			// find the target at low resolution, then only search around it at full resolution
+			if (findCandidate(searchedRegion, scale, config, displayMask)) {
+				findContours(candidateRegion, config, false);
+			} else {
+				// a target too thin to survive the downscale can still be found at full resolution
+				findContours(searchedRegion, config, displayMask);
 			}
-			
-			// find the midpoint between the upper left and right points on the contour
-			double[] pMidpoint = new double[2];
-			pMidpoint[0] = (pUpperLeft[0] + pUpperRight[0]) / 2;
-			pMidpoint[1] = (pUpperLeft[1] + pUpperRight[1]) / 2;
+		} else {
+			findContours(searchedRegion, config, displayMask);
+		}
+		long stageStart = System.nanoTime();
 		
-			// draw the contours, target rect, midpoint, etc
-			Imgproc.drawContours(originalImage, Arrays.asList(targetContour.get()), -1, color_yellow);
-			Imgproc.rectangle(originalImage, boundingRect.tl(), boundingRect.br(), color_gray);
-			Imgproc.circle(originalImage, new Point(pUpperLeft), 2, color_white, -1);
-			Imgproc.circle(originalImage, new Point(pUpperRight), 2, color_white, -1);
-			Imgproc.circle(originalImage, new Point(pMidpoint), 6, color_red, 3);
+		List<CandidateScorer.Candidate> ranked = candidateScorer.rank(contours, config, 1, maxTargets);
+		CandidateScorer.Candidate target = ranked.isEmpty() ? null : ranked.get(0);
+		MatOfPoint targetContour = null;
+		Rect boundingRect = null;
+		if (target != null) {
+			targetContour = target.getContour();
+			boundingRect = target.getBoundingRect();
+			findMidpoint(targetContour, boundingRect, upperCorners, pMidpoint);
+			regionTracker.found(boundingRect, cols, rows);
+			stageStart = recordStage(PipelineMetrics.Stage.SELECT, stageStart);
 			
 			// update NetworkTables
-			visionTable.setTargetAcquired(true);
-			visionTable.setTargetX((int)pMidpoint[0]);
-			visionTable.setTargetY((int)pMidpoint[1]);
-			visionTable.setLastUpdated(System.currentTimeMillis());
+			lastResult = createResult(true, (int)pMidpoint[0], (int)pMidpoint[1]);
 		} else {
+			regionTracker.lost(cols, rows, config.getRoiMaxMisses());
+			stageStart = recordStage(PipelineMetrics.Stage.SELECT, stageStart);
+			
 			// update NetworkTables
-			visionTable.setTargetAcquired(false);
-			visionTable.setTargetX(0);
-			visionTable.setTargetY(0);
-			visionTable.setLastUpdated(System.currentTimeMillis());
+			lastResult = createResult(false, 0, 0);
+		}
+		visionTable.publishTarget(lastResult);
+		if (maxTargets > 1) {
+			publishTargets(ranked);
+		}
+		lastTrack = targetTracker.update(lastResult, frameCaptureNanos, config.getTrackerMaxMisses());
+		visionTable.publishTrack(lastTrack);
+		recordStage(PipelineMetrics.Stage.PUBLISH, stageStart);
+		// the raw frame, before the overlays are drawn on it
+		recorder.record(originalImage, lastResult, config);
+		
+		if (streaming) {
+			streamImage = originalImage;
+			if (displayMask) {
+				showMask(searchedRegion);
+				streamImage = maskView;
+			}
+			if (tracking) {
+				drawRegion(searchedRegion);
+			}
+			for (int i = 1; i < ranked.size(); i++) {
+				drawOtherTarget(ranked.get(i).getBoundingRect());
+			}
+			if (targetContour != null) {
+				drawTarget(targetContour, boundingRect);
+			}
+			// encode it as jpeg on the encoder thread
+			encoder.submit(streamImage, streamGovernor.getQuality());
 		}
-
 		
-		// encode it as jpeg
-		MatOfByte m = new MatOfByte();
-		MatOfInt parameters = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, visionTable.getQuality());
-		Imgcodecs.imencode(".jpg", originalImage, m, parameters);
-		lastImage.set(m.toArray());
+		releaseContours();
+		if (changeGating) {
+			changeDetector.processed(config);
+		}
+	}
+	
+	/**
+	 * Publish the last result again for a frame that was skipped, restamped with this frame's
+	 * times so lastUpdated and the latency still move on.
+	 */
+	private void republishResult(VisionConfig config) {
+		long stageStart = System.nanoTime();
+		lastResult = createResult(result.isAcquired(), result.getX(), result.getY());
+		visionTable.publishTarget(lastResult);
+		if (config.getMaxTargets() > 1) {
+			visionTable.publishTargets(targetList);
+		}
+		lastTrack = targetTracker.update(lastResult, frameCaptureNanos, config.getTrackerMaxMisses());
+		visionTable.publishTrack(lastTrack);
+		recordStage(PipelineMetrics.Stage.PUBLISH, stageStart);
+		// nothing has been drawn on the frame yet
+		recorder.record(originalImage, lastResult, config);
+	}
+	
+	/**
+	 * Ask the governor whether to stream this frame. It runs before the target is published,
+	 * so a failure here only costs the stream frame, never the target data.
+	 */
+	private boolean shouldStream(VisionConfig config) {
+		try {
+			return streamGovernor.shouldStream(config);
+		} catch (RuntimeException e) {
+			LOG.error("Error while deciding whether to stream the frame", e);
+			return false;
+		}
+	}
+	
+	/**
+	 * Find the upper left and upper right points on the contour and the midpoint between them.
+	 * 
+	 * @param corners receives the upper left x,y and the upper right x,y
+	 * @param midpoint receives the midpoint x,y
+	 */
+	private void findMidpoint(MatOfPoint contour, Rect boundingRect, int[] corners, double[] midpoint) {
+		contourPoints = ContourGeometry.toArray(contour, contourPoints);
+		ContourGeometry.findUpperCorners(contourPoints, (int) contour.total(),
+				boundingRect.x, boundingRect.x + boundingRect.width, boundingRect.y, corners);
+		midpoint[0] = (corners[0] + corners[2]) / 2.0;
+		midpoint[1] = (corners[1] + corners[3]) / 2.0;
+	}
+	
+	private void publishTargets(List<CandidateScorer.Candidate> ranked) {
+		targetList.clear();
+		for (int i = 0; i < ranked.size(); i++) {
+			CandidateScorer.Candidate candidate = ranked.get(i);
+			if (i == 0) {
+				// already worked out for the primary target
+				targetList.add(pMidpoint[0], pMidpoint[1], candidate.getBoundingRect(), candidate.getArea(), candidate.getScore());
+			} else {
+				findMidpoint(candidate.getContour(), candidate.getBoundingRect(), otherCorners, otherMidpoint);
+				targetList.add(otherMidpoint[0], otherMidpoint[1], candidate.getBoundingRect(), candidate.getArea(), candidate.getScore());
+			}
+		}
+		visionTable.publishTargets(targetList);
+	}
+	
+	/**
+	 * Stamp a result with when it was produced, and when and how long ago its frame was captured.
+	 * 
+	 * @return {@link #result}, refilled
+	 */
+	private TargetResult createResult(boolean acquired, int x, int y) {
+		long now = System.currentTimeMillis();
+		long latencyNanos = System.nanoTime() - frameCaptureNanos;
+		long captureTimestamp = now - TimeUnit.NANOSECONDS.toMillis(latencyNanos);
+		return result.set(acquired, x, y, now, captureTimestamp, latencyNanos / 1e6);
+	}
+	
+	/**
+	 * Threshold the region of the frame and find the contours in it, in full-frame coordinates.
+	 * 
+	 * @param keepMask copy the mask for {@link #showMask(Rect)} before findContours modifies it
+	 */
+	private void findContours(Rect region, VisionConfig config, boolean keepMask) {
+		boolean wholeFrame = region.width == originalImage.cols() && region.height == originalImage.rows();
+		Mat regionImage = wholeFrame ? originalImage : originalImage.submat(region);
 		
+		// mask out only those pixels in the HSL range
+		getThresholdEngine(config).apply(regionImage, config, maskImage);
+		if (!wholeFrame) {
+			regionImage.release();
+		}
+		if (keepMask) {
+			maskImage.copyTo(displayedMask);
+		}
 		
+		// find all the contours, offset so everything after this is in full-frame coordinates
+		long start = System.nanoTime();
+		regionOffset.x = region.x;
+		regionOffset.y = region.y;
+		Imgproc.findContours(maskImage, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE, regionOffset);
+		recordStage(PipelineMetrics.Stage.CONTOURS, start);
 	}
-
-	private boolean shapeMatches(MatOfPoint contour) {
-		// http://docs.opencv.org/3.1.0/d3/dc0/group__imgproc__shape.html#gaadc90cb16e2362c9bd6e7363e6e4c317
-//		MatOfPoint perfectContour = null; // TODO load this with the shape we are looking for
-//		double percentMatch = Imgproc.matchShapes(perfectContour, contour, Imgproc.CV_CONTOURS_MATCH_I3, 0);
-//		return percentMatch > 0.75;
+	
+	/**
+	 * Look for the target in a copy of the region downscaled by the given factor and set
+	 * {@link #candidateRegion} to where it is at full resolution. Only the area and aspect
+	 * ratio are checked here, so the region covers every blob that could be a target and the
+	 * shape checks decide between them at full resolution.
+	 * 
+	 * @return false if there is nothing in the region that could be a target
+	 */
+	private boolean findCandidate(Rect region, int scale, VisionConfig config, boolean keepMask) {
+		long start = System.nanoTime();
+		Mat regionImage = originalImage.submat(region);
+		Imgproc.resize(regionImage, coarseImage, coarseSize, 1.0 / scale, 1.0 / scale, Imgproc.INTER_AREA);
+		regionImage.release();
+		recordStage(PipelineMetrics.Stage.DOWNSCALE, start);
+		
+		getThresholdEngine(config).apply(coarseImage, config, maskImage);
+		if (keepMask) {
+			maskImage.copyTo(displayedMask);
+		}
+		start = System.nanoTime();
+		Imgproc.findContours(maskImage, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+		recordStage(PipelineMetrics.Stage.CONTOURS, start);
+		
+		// areas on the downscaled image are smaller by the square of the scale
+		List<CandidateScorer.Candidate> ranked = candidateScorer.rankCoarse(contours, config, 1.0 / (scale * scale),
+				contours.size());
+		boolean found = !ranked.isEmpty();
+		if (found) {
+			// scale the area covering every candidate back up, with a margin for the pixels lost to the downscale
+			int left = Integer.MAX_VALUE;
+			int top = Integer.MAX_VALUE;
+			int right = Integer.MIN_VALUE;
+			int bottom = Integer.MIN_VALUE;
+			for (int i = 0; i < ranked.size(); i++) {
+				Rect r = ranked.get(i).getBoundingRect();
+				left = Math.min(left, r.x);
+				top = Math.min(top, r.y);
+				right = Math.max(right, r.x + r.width);
+				bottom = Math.max(bottom, r.y + r.height);
+			}
+			int margin = scale * CANDIDATE_MARGIN;
+			left = Math.max(region.x, region.x + left * scale - margin);
+			top = Math.max(region.y, region.y + top * scale - margin);
+			right = Math.min(region.x + region.width, region.x + right * scale + margin);
+			bottom = Math.min(region.y + region.height, region.y + bottom * scale + margin);
+			candidateRegion.x = left;
+			candidateRegion.y = top;
+			candidateRegion.width = right - left;
+			candidateRegion.height = bottom - top;
+		}
+		releaseContours();
+		return found;
+	}
+	
+	/**
+	 * Fill {@link #maskView} with the kept mask, inside the region searched, for tuning thresholds.
+	 */
+	private void showMask(Rect region) {
+		maskView.create(originalImage.rows(), originalImage.cols(), originalImage.type());
+		maskView.setTo(color_black);
+		if (displayedMask.empty()) {
+			return;
+		}
+		Mat regionImage = maskView.submat(region);
+		if (displayedMask.cols() == region.width && displayedMask.rows() == region.height) {
+			Imgproc.cvtColor(displayedMask, regionImage, Imgproc.COLOR_GRAY2BGR);
+		} else {
+			// a downscaled mask
+			Imgproc.cvtColor(displayedMask, coarseImage, Imgproc.COLOR_GRAY2BGR);
+			Imgproc.resize(coarseImage, regionImage, regionImage.size(), 0, 0, Imgproc.INTER_NEAREST);
+		}
+		regionImage.release();
+	}
+	
+	private void releaseContours() {
+		// the contour Mats are created by findContours each frame, free their native memory now
+		// rather than waiting for the finalizer
+		for (int i = 0; i < contours.size(); i++) {
+			contours.get(i).release();
+		}
+		contours.clear();
+	}
+	
+	private ThresholdEngine getThresholdEngine(VisionConfig config) {
+		if (config.getThresholdEngine() == VisionNetworkTable.THRESHOLD_ENGINE_LUT) {
+			return lutThreshold;
+		}
+		return config.getThresholdThreads() > 1 ? tiledThreshold : hlsThreshold;
+	}
+	
+	/**
+	 * Record the time since start against the stage.
+	 * 
+	 * @return now, i.e. the start of the next stage
+	 */
+	private long recordStage(PipelineMetrics.Stage stage, long start) {
+		long now = System.nanoTime();
+		metrics.record(stage, now - start);
+		return now;
+	}
+	
+	public StreamGovernor getStreamGovernor() {
+		return streamGovernor;
+	}
+	
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+	
+	private void drawRegion(Rect region) {
+		drawRectTopLeft.x = region.x;
+		drawRectTopLeft.y = region.y;
+		drawRectBottomRight.x = region.x + region.width;
+		drawRectBottomRight.y = region.y + region.height;
+		Imgproc.rectangle(streamImage, drawRectTopLeft, drawRectBottomRight, color_blue);
+	}
+	
+	private void drawOtherTarget(Rect boundingRect) {
+		drawRectTopLeft.x = boundingRect.x;
+		drawRectTopLeft.y = boundingRect.y;
+		drawRectBottomRight.x = boundingRect.x + boundingRect.width;
+		drawRectBottomRight.y = boundingRect.y + boundingRect.height;
+		Imgproc.rectangle(streamImage, drawRectTopLeft, drawRectBottomRight, color_gray);
+	}
+	
+	private void drawTarget(MatOfPoint targetContour, Rect boundingRect) {
+		// draw the contours, target rect, midpoint, etc
+		targetContours.add(targetContour);
+		Imgproc.drawContours(streamImage, targetContours, -1, color_yellow);
+		targetContours.clear();
+		drawRectTopLeft.x = boundingRect.x;
+		drawRectTopLeft.y = boundingRect.y;
+		drawRectBottomRight.x = boundingRect.x + boundingRect.width;
+		drawRectBottomRight.y = boundingRect.y + boundingRect.height;
+		Imgproc.rectangle(streamImage, drawRectTopLeft, drawRectBottomRight, color_gray);
+		drawUpperLeft.x = upperCorners[0];
+		drawUpperLeft.y = upperCorners[1];
+		drawUpperRight.x = upperCorners[2];
+		drawUpperRight.y = upperCorners[3];
+		drawMidpoint.x = pMidpoint[0];
+		drawMidpoint.y = pMidpoint[1];
+		Imgproc.circle(streamImage, drawUpperLeft, 2, color_white, -1);
+		Imgproc.circle(streamImage, drawUpperRight, 2, color_white, -1);
+		Imgproc.circle(streamImage, drawMidpoint, 6, color_red, 3);
+	}
+	
+	/**
+	 * Take the newest frame from the capture thread, skipping any older ones.
+	 * 
+	 * @return false if no new frame has been captured since the last call
+	 */
+	public boolean captureImage() {
+		if (liveCamera) {
+			// requested every frame so a value that failed to set is tried again
+			setCameraManualExposure();
+			setCameraAbsoluteExposure();
+			setCameraBrightness();
+		}
+		Mat frame = grabber.nextFrame();
+		if (frame == null) {
+			return false;
+		}
+		originalImage = frame;
+		frameCaptureNanos = grabber.getFrameCaptureNanos();
 		return true;
 	}
-
-	public void captureImage() {
-		setCameraAbsoluteExposure();
-		setCameraBrightness();
-		capture.read(originalImage);
+	
+	/**
+	 * Run the pipeline over the given frame right away, on the calling thread, e.g. to
+	 * replay recorded frames. Must not be mixed with {@link #start()}.
+	 * 
+	 * @return the target found in the frame, refilled by the next one
+	 */
+	public TargetResult processFrame(Mat frame) {
+		return processFrame(frame, System.nanoTime());
+	}
+	
+	/**
+	 * @param captureNanos System.nanoTime() when the frame was captured
+	 * @see #processFrame(Mat)
+	 */
+	public TargetResult processFrame(Mat frame, long captureNanos) {
+		originalImage = frame;
+		frameCaptureNanos = captureNanos;
+		processImage();
+		return lastResult;
+	}
+	
+	/**
+	 * @return the target found in the last processed frame, null before the first one; the
+	 *         same instance is refilled every frame, so copy it to keep it
+	 */
+	public TargetResult getLastResult() {
+		return lastResult;
+	}
+	
+	/**
+	 * @return the tracker's estimate after the last processed frame, updated in place by the next one
+	 */
+	public TrackedTarget getLastTrack() {
+		return lastTrack;
 	}
 	
 	public void loadImage(String filename) {
@@ -226,46 +594,60 @@ public class ImageProcessor implements Runnable {
 		Imgcodecs.imwrite(filename, image);
 	}
 	
-	private static double distance(double[] p1, double[] p2) {
-		  double dx = Math.abs(p1[0] - p2[0]);
-		  double dy = Math.abs(p1[1] - p2[1]);
-		  return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
-	  }
+	/**
+	 * Register interest in the encoded image stream. Overlays are only drawn and frames
+	 * only encoded while at least one viewer is registered.
+	 */
+	public void addViewer() {
+		viewers.incrementAndGet();
+	}
+	
+	public void removeViewer() {
+		viewers.decrementAndGet();
+	}
+	
+	public boolean hasViewers() {
+		return viewers.get() > 0;
+	}
+	
+	private void publishFrame(JpegFrame frame) {
+		lastImage.set(frame);
+		for (Consumer<JpegFrame> listener : frameListeners) {
+			listener.accept(frame);
+		}
+	}
 
 	public byte[] getLatestImage() {
+		JpegFrame frame = lastImage.get();
+		return frame == null ? null : frame.getData();
+	}
+	
+	public JpegFrame getLatestFrame() {
 		return lastImage.get();
 	}
+	
+	/**
+	 * Register a callback run on the encoder thread each time a new frame is encoded.
+	 * It must return quickly, e.g. by just waking up the consumer's own thread.
+	 */
+	public void addFrameListener(Consumer<JpegFrame> listener) {
+		frameListeners.add(listener);
+	}
+	
+	public void removeFrameListener(Consumer<JpegFrame> listener) {
+		frameListeners.remove(listener);
+	}
 
-	private int brightness;
+	// the service only applies a value again if it changed or failed to set
 	private void setCameraBrightness() {
-		if (brightness != visionTable.getBrightness()) {
-			brightness = visionTable.getBrightness();
-			try {
-				Runtime.getRuntime().exec("/usr/bin/v4l2-ctl --set-ctrl brightness=" + brightness);
-			} catch (Exception ex) {
-				LOG.error("Could not adjust brightness", ex);
-			}
-		}
+		cameraControl.set(CameraControlService.BRIGHTNESS, visionTable.getConfig().getBrightness());
 	}
 	
 	private void setCameraManualExposure() {
-		try {
-			Runtime.getRuntime().exec("/usr/bin/v4l2-ctl --set-ctrl exposure_auto=1");
-		} catch (Exception ex) {
-			LOG.error("Could not set manual exposure", ex);
-		}
+		cameraControl.set(CameraControlService.EXPOSURE_AUTO, CameraControlService.EXPOSURE_MANUAL);
 	}
 	
-	private int absoluteExposure;
 	private void setCameraAbsoluteExposure() {
-		if (absoluteExposure != visionTable.getAbsoluteExposure()) {
-			absoluteExposure = visionTable.getAbsoluteExposure();
-			try {
-				Runtime.getRuntime().exec("/usr/bin/v4l2-ctl --set-ctrl exposure_absolute=" + absoluteExposure);
-			} catch (Exception ex) {
-				LOG.error("Could not set manual exposure", ex);
-			}
-		}
+		cameraControl.set(CameraControlService.EXPOSURE_ABSOLUTE, visionTable.getConfig().getAbsoluteExposure());
 	}
-	
-}
\ No newline at end of file
+}
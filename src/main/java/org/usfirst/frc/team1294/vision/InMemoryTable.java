@@ -0,0 +1,153 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.wpi.first.wpilibj.tables.ITable;
+import edu.wpi.first.wpilibj.tables.ITableListener;
+
+/**
+ * A map-backed stand-in for the vision NetworkTable so replays and benchmarks can build a
+ * {@link VisionNetworkTable} without ntcore or a robot, and without publishing anything to
+ * a robot that happens to be on the network. Supports the put and get calls the vision code
+ * makes, and table listeners, which are called on the putting thread whenever a put changes
+ * a value. Sub-table listeners are ignored, and any other call returns null, false or zero.
+ */
+final class InMemoryTable {
+
+	// system properties starting with this set the table's starting values, e.g. -Dvision.thresholdLowH=60
+	static final String PROPERTY_PREFIX = "vision.";
+
+	private InMemoryTable() {
+	}
+
+	static VisionNetworkTable create() {
+		return new VisionNetworkTable(createTable());
+	}
+
+	/**
+	 * @return an empty stand-in table, e.g. to play another writer such as the dashboard
+	 */
+	static ITable createTable() {
+		return createTable(new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * @return a table holding the values given as {@link #PROPERTY_PREFIX} system properties,
+	 *         numbers unless the value is true or false
+	 */
+	static VisionNetworkTable fromSystemProperties() {
+		Map<String, Object> values = new ConcurrentHashMap<>();
+		Properties properties = System.getProperties();
+		for (String name : properties.stringPropertyNames()) {
+			if (!name.startsWith(PROPERTY_PREFIX)) {
+				continue;
+			}
+			String key = name.substring(PROPERTY_PREFIX.length());
+			String value = properties.getProperty(name).trim();
+			if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+				values.put(key, Boolean.valueOf(value));
+			} else {
+				values.put(key, Double.valueOf(value));
+			}
+		}
+		return new VisionNetworkTable(createTable(values));
+	}
+
+	private static ITable createTable(Map<String, Object> values) {
+		List<Listener> listeners = new CopyOnWriteArrayList<>();
+		return (ITable) Proxy.newProxyInstance(ITable.class.getClassLoader(), new Class<?>[] { ITable.class },
+				(proxy, method, args) -> {
+					String name = method.getName();
+					if (name.startsWith("put") && args.length == 2) {
+						String key = (String) args[0];
+						Object previous = values.put(key, args[1]);
+						if (!Objects.equals(previous, args[1])) {
+							for (Listener listener : listeners) {
+								listener.notify((ITable) proxy, key, args[1], previous == null);
+							}
+						}
+						return true;
+					}
+					if (name.startsWith("get") && !name.equals("getFlags") && args != null && args.length <= 2) {
+						Object value = values.get(args[0]);
+						if (value != null) {
+							return value;
+						}
+						return args.length == 2 ? args[1] : zero(method.getReturnType());
+					}
+					if (name.equals("containsKey")) {
+						return values.containsKey(args[0]);
+					}
+					if (name.startsWith("addTableListener")) {
+						// (listener), (listener, immediateNotify or flags), or (key, listener, immediateNotify or flags)
+						boolean keyed = args[0] instanceof String;
+						Listener listener = new Listener(keyed ? (String) args[0] : null, (ITableListener) args[keyed ? 1 : 0]);
+						listeners.add(listener);
+						if (args.length > (keyed ? 2 : 1) && Boolean.TRUE.equals(args[args.length - 1])) {
+							values.forEach((key, value) -> listener.notify((ITable) proxy, key, value, true));
+						}
+						return null;
+					}
+					if (name.equals("removeTableListener")) {
+						listeners.removeIf(listener -> listener.listener == args[0]);
+						return null;
+					}
+					return zero(method.getReturnType());
+				});
+	}
+
+	/**
+	 * @return what an unsupported call returns, never null for a primitive so it can be unboxed
+	 */
+	private static Object zero(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == double.class) {
+			return 0.0;
+		}
+		if (type == float.class) {
+			return 0.0f;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == short.class) {
+			return (short) 0;
+		}
+		if (type == byte.class) {
+			return (byte) 0;
+		}
+		if (type == char.class) {
+			return (char) 0;
+		}
+		return null;
+	}
+
+	private static class Listener {
+
+		// null to hear about every key
+		final String key;
+		final ITableListener listener;
+
+		Listener(String key, ITableListener listener) {
+			this.key = key;
+			this.listener = listener;
+		}
+
+		void notify(ITable table, String changedKey, Object value, boolean isNew) {
+			if (key == null || key.equals(changedKey)) {
+				listener.valueChanged(table, changedKey, value, isNew);
+			}
+		}
+	}
+}
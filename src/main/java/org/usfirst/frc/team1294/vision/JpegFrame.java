@@ -0,0 +1,27 @@
+package org.usfirst.frc.team1294.vision;
+
+/**
+ * An encoded image published by the {@link ImageProcessor}, numbered so consumers can
+ * tell new frames from ones they've already seen and count the ones they missed.
+ */
+public final class JpegFrame {
+
+	private final long sequence;
+	private final byte[] data;
+
+	public JpegFrame(long sequence, byte[] data) {
+		this.sequence = sequence;
+		this.data = data;
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * @return the JPEG bytes, shared between all consumers so must not be modified
+	 */
+	public byte[] getData() {
+		return data;
+	}
+}
@@ -0,0 +1,104 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram cheap enough to record every frame. Values are kept in
+ * microseconds in log-linear buckets, four per power of two, so percentiles are accurate
+ * to within about 25% from a microsecond up to well past a minute.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 4;
+	private static final int BUCKETS = 128;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong max = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		if (micros < 0) {
+			micros = 0;
+		}
+		counts.incrementAndGet(bucketOf(micros));
+		long currentMax = max.get();
+		while (micros > currentMax && !max.compareAndSet(currentMax, micros)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Take the counts recorded so far and start a new interval.
+	 */
+	public Snapshot snapshotAndReset() {
+		long[] snapshot = new long[BUCKETS];
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			snapshot[i] = counts.getAndSet(i, 0);
+			total += snapshot[i];
+		}
+		return new Snapshot(snapshot, total, max.getAndSet(0));
+	}
+
+	static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int mantissa = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+		return Math.min(BUCKETS - 1, SUB_BUCKETS * (exponent - 1) + mantissa);
+	}
+
+	/**
+	 * @return the largest value, in microseconds, that falls into the bucket
+	 */
+	static long bucketUpperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + 1;
+		long mantissa = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + mantissa + 1) << (exponent - 2)) - 1;
+	}
+
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long maxMicros;
+
+		Snapshot(long[] counts, long count, long maxMicros) {
+			this.counts = counts;
+			this.count = count;
+			this.maxMicros = maxMicros;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @param quantile between 0 and 1
+		 * @return upper bound in milliseconds of the bucket holding the quantile, 0 if empty
+		 */
+		public double getPercentileMillis(double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = (long) Math.ceil(quantile * count);
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank && counts[i] > 0) {
+					return Math.min(bucketUpperBound(i), maxMicros) / 1000.0;
+				}
+			}
+			return maxMicros / 1000.0;
+		}
+
+		public double getMaxMillis() {
+			return maxMicros / 1000.0;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Thresholds in a single pass with no intermediate HLS image, by looking every BGR value
+ * up in a table holding one bit per possible colour (2MB).
+ *
+ * The table is built by running every colour through the same cvtColor and inRange as
+ * {@link HlsThresholdEngine}, so both produce identical masks. Building it takes a
+ * noticeable fraction of a second, so when a threshold changes a second table is built on
+ * a background thread while the fallback engine keeps the masks coming, and the new table
+ * is swapped in on the processing thread once it is done.
+ */
+public class LutThresholdEngine implements ThresholdEngine {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LutThresholdEngine.class);
+
+	private static final int COLOURS = 1 << 24;
+
+	private final PipelineMetrics metrics;
+	private final ThresholdEngine fallback;
+	private ExecutorService builder;
+
+	// only touched by the processing thread: the table in use, and the one free to build into
+	private Table active;
+	private Table idle;
+	private boolean building;
+	// handed over from the builder thread once a table is done
+	private volatile Table finished;
+
+	private byte[] pixels = new byte[0];
+	private byte[] maskPixels = new byte[0];
+
+	/**
+	 * @param fallback thresholds the frames while the table for new thresholds is being built
+	 */
+	public LutThresholdEngine(PipelineMetrics metrics, ThresholdEngine fallback) {
+		this.metrics = metrics;
+		this.fallback = fallback;
+	}
+
+	@Override
+	public void apply(Mat frame, VisionConfig config, Mat mask) {
+		Table done = finished;
+		if (done != null) {
+			finished = null;
+			building = false;
+			if (active != null) {
+				idle = active;
+			}
+			active = done;
+		}
+		if (active == null || !active.matches(config)) {
+			if (!building) {
+				startBuild(config);
+			}
+			fallback.apply(frame, config, mask);
+			return;
+		}
+
+		long start = System.nanoTime();
+		int count = (int) frame.total();
+		if (pixels.length < count * 3) {
+			pixels = new byte[count * 3];
+			maskPixels = new byte[count];
+		}
+		frame.get(0, 0, pixels);
+
+		byte[] lut = active.bits;
+		for (int i = 0, p = 0; i < count; i++, p += 3) {
+			int colour = (pixels[p] & 0xff) << 16 | (pixels[p + 1] & 0xff) << 8 | (pixels[p + 2] & 0xff);
+			maskPixels[i] = (lut[colour >>> 3] & (1 << (colour & 7))) != 0 ? (byte) 255 : 0;
+		}
+
+		mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+		mask.put(0, 0, maskPixels);
+		metrics.record(PipelineMetrics.Stage.THRESHOLD, System.nanoTime() - start);
+	}
+
+	/**
+	 * Build the table for the config on the calling thread, e.g. before replaying or
+	 * benchmarking, so the first frames don't go to the fallback engine.
+	 */
+	public void prepare(VisionConfig config) {
+		if (active != null && active.matches(config)) {
+			return;
+		}
+		if (building) {
+			throw new IllegalStateException("A table is already being built");
+		}
+		Table table = idle != null ? idle : new Table();
+		idle = active;
+		table.build(config);
+		active = table;
+	}
+
+	private void startBuild(VisionConfig config) {
+		if (builder == null) {
+			builder = Executors.newSingleThreadExecutor(r -> {
+				Thread thread = new Thread(r, "lut-build-thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		Table table = idle != null ? idle : new Table();
+		idle = null;
+		building = true;
+		builder.execute(() -> {
+			try {
+				table.build(config);
+			} catch (Exception e) {
+				LOG.error("Error while building threshold lookup table", e);
+				// handed back without thresholds, so the next frame tries again
+				table.clear();
+			}
+			finished = table;
+		});
+	}
+
+	/**
+	 * One bit per BGR colour for the thresholds it was built with.
+	 */
+	private static final class Table {
+
+		final byte[] bits = new byte[COLOURS / 8];
+		final int[] thresholds = new int[6];
+		boolean valid;
+
+		boolean matches(VisionConfig config) {
+			return valid
+					&& thresholds[0] == config.getThresholdLowH()
+					&& thresholds[1] == config.getThresholdLowL()
+					&& thresholds[2] == config.getThresholdLowS()
+					&& thresholds[3] == config.getThresholdHighH()
+					&& thresholds[4] == config.getThresholdHighL()
+					&& thresholds[5] == config.getThresholdHighS();
+		}
+
+		void clear() {
+			valid = false;
+		}
+
+		/**
+		 * Rebuild the table one blue value at a time, converting a 256x256 image holding every
+		 * green/red combination.
+		 */
+		void build(VisionConfig config) {
+			long start = System.nanoTime();
+			valid = false;
+			thresholds[0] = config.getThresholdLowH();
+			thresholds[1] = config.getThresholdLowL();
+			thresholds[2] = config.getThresholdLowS();
+			thresholds[3] = config.getThresholdHighH();
+			thresholds[4] = config.getThresholdHighL();
+			thresholds[5] = config.getThresholdHighS();
+			Scalar low = new Scalar(thresholds[0], thresholds[1], thresholds[2]);
+			Scalar high = new Scalar(thresholds[3], thresholds[4], thresholds[5]);
+
+			Mat colours = new Mat(256, 256, CvType.CV_8UC3);
+			Mat hls = new Mat();
+			Mat inRange = new Mat();
+			byte[] chunk = new byte[256 * 256 * 3];
+			byte[] chunkMask = new byte[256 * 256];
+			for (int g = 0; g < 256; g++) {
+				for (int r = 0; r < 256; r++) {
+					int p = (g * 256 + r) * 3;
+					chunk[p + 1] = (byte) g;
+					chunk[p + 2] = (byte) r;
+				}
+			}
+
+			try {
+				for (int b = 0; b < 256; b++) {
+					for (int p = 0; p < chunk.length; p += 3) {
+						chunk[p] = (byte) b;
+					}
+					colours.put(0, 0, chunk);
+					Imgproc.cvtColor(colours, hls, Imgproc.COLOR_BGR2HLS);
+					Core.inRange(hls, low, high, inRange);
+					inRange.get(0, 0, chunkMask);
+
+					// chunk index is g << 8 | r, so the colour index is b << 16 | chunk index
+					int base = b << 16;
+					for (int i = 0; i < chunkMask.length; i += 8) {
+						int packed = 0;
+						for (int bit = 0; bit < 8; bit++) {
+							if (chunkMask[i + bit] != 0) {
+								packed |= 1 << bit;
+							}
+						}
+						bits[(base + i) >>> 3] = (byte) packed;
+					}
+				}
+			} finally {
+				colours.release();
+				hls.release();
+				inRange.release();
+			}
+			valid = true;
+			LOG.info("Rebuilt threshold lookup table in {} ms", (System.nanoTime() - start) / 1000000);
+		}
+	}
+}
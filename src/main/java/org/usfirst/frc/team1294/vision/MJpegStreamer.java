@@ -1,69 +1,130 @@
 package org.usfirst.frc.team1294.vision;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
-import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.Thread.UncaughtExceptionHandler;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.helpers.NOPLoggerFactory;
 
+/**
+ * Serves the processed images as an MJPEG stream to any number of viewers from a single
+ * thread, using a non-blocking selector.
+ *
+ * Each streaming client registers as a viewer with the {@link ImageProcessor}, which only
+ * draws overlays and encodes images while there is at least one, and wakes the selector
+ * whenever it publishes a frame. Each new JPEG is framed once into a shared direct buffer
+ * and every client writes from its own view of that buffer, so adding a viewer costs no
+ * extra copies. A client always gets the newest frame as soon as it has finished writing
+ * the previous one; frames that came and went in the meantime are counted as dropped for
+ * that client rather than queued, so a slow viewer never holds up the others or the
+ * vision loop.
+ *
+ * GET /metrics on the same port returns the pipeline's frame timing as plain text.
+ */
 public class MJpegStreamer implements ThreadFactory, Runnable {
 
 	private static final Logger LOG = LoggerFactory.getLogger(MJpegStreamer.class);
 	private static final String BOUNDARY = "mjpegframe";
 	private static final String CRLF = "\r\n";
-	
+
+	private static final byte[] RESPONSE_HEADER = ("HTTP/1.0 200 OK" + CRLF
+			+ "Connection: close" + CRLF
+			+ "Cache-Control: no-cache" + CRLF
+			+ "Cache-Control: private" + CRLF
+			+ "Pragma: no-cache" + CRLF
+			+ "Content-type: multipart/x-mixed-replace; boundary=--" + BOUNDARY + CRLF
+			+ CRLF).getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FRAME_TRAILER = CRLF.getBytes(StandardCharsets.US_ASCII);
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+	private static final int MAX_REQUEST_SIZE = 8192;
+	private static final int MAX_POOLED_FRAMES = 4;
+	private static final byte[] METRICS_REQUEST = "GET /metrics ".getBytes(StandardCharsets.US_ASCII);
+
 	private int number = 0;
 	private int port = 0;
 	private ExecutorService executor = Executors.newCachedThreadPool(this);
-	private ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 	private ImageProcessor imageProcessor;
 	private WebcamExceptionHandler exceptionHandler = new WebcamExceptionHandler();
-	private VisionNetworkTable visionTable;
-	
-	public MJpegStreamer(int port, ImageProcessor imageProcessor, VisionNetworkTable visionTable) {
+
+	private volatile Selector selector;
+	private final Consumer<JpegFrame> frameListener = frame -> {
+		Selector s = selector;
+		if (s != null) {
+			s.wakeup();
+		}
+	};
+
+	// only modified by the selector thread, but read when reporting client statistics
+	private final List<Client> clients = new CopyOnWriteArrayList<>();
+	// only touched by the selector thread
+	private final ArrayDeque<Frame> framePool = new ArrayDeque<>();
+	private Frame currentFrame;
+
+	public MJpegStreamer(int port, ImageProcessor imageProcessor) {
 		this.port = port;
 		this.imageProcessor = imageProcessor;
-		this.visionTable = visionTable;
 	}
-	
+
 	@Override
 	public void run() {
-		ServerSocket server = null;
-		try {
-			server = new ServerSocket(port, 150);
+		try (Selector selector = Selector.open(); ServerSocketChannel server = ServerSocketChannel.open()) {
+			server.configureBlocking(false);
+			server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			server.bind(new InetSocketAddress(port), 150);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			this.selector = selector;
+			imageProcessor.addFrameListener(frameListener);
+
 			while (true) {
-				Socket socket = server.accept();
-				LOG.info("New connection from {}", socket.getRemoteSocketAddress());
-				scheduler.execute(new Connection(socket));
+				selector.select();
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if (!key.isValid()) {
+						continue;
+					}
+					if (key.isAcceptable()) {
+						accept(server, selector);
+					} else {
+						service((Client) key.attachment(), key);
+					}
+				}
+
+				sendLatestFrame();
 			}
 		} catch (Exception e) {
-			LOG.error("Cannot accept socket connection", e);
+			LOG.error("MJPEG server stopped", e);
 		} finally {
-			try {
-				server.close();
-			} catch (IOException e) {
-				LOG.error("Could not close server", e);
-			}
+			imageProcessor.removeFrameListener(frameListener);
+			selector = null;
 		}
 	}
-	
+
 	public void start() {
 		executor.execute(this);
 	}
-		
+
 	@Override
 	public Thread newThread(Runnable r) {
 		Thread thread = new Thread(r, String.format("streamer-thread-%s", number++));
@@ -72,6 +133,142 @@ public class MJpegStreamer implements ThreadFactory, Runnable {
 		return thread;
 	}
 
+	private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+		SocketChannel channel = server.accept();
+		if (channel == null) {
+			return;
+		}
+		channel.configureBlocking(false);
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+		channel.setOption(StandardSocketOptions.SO_KEEPALIVE, false);
+		SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+		Client client = new Client(channel, key);
+		key.attach(client);
+		clients.add(client);
+		LOG.info("New connection from {}", client.address);
+	}
+
+	private void service(Client client, SelectionKey key) {
+		try {
+			if (key.isReadable()) {
+				client.read();
+			}
+			if (key.isValid() && key.isWritable()) {
+				client.write();
+			}
+		} catch (IOException e) {
+			LOG.info("Connection from {} closed: {}", client.address, e.getMessage());
+			client.close();
+		} catch (RuntimeException e) {
+			// don't let one bad connection take down the server for everyone else
+			LOG.error("Error serving connection from " + client.address, e);
+			client.close();
+		}
+	}
+
+	/**
+	 * Plain text frame timing and viewer statistics for GET /metrics.
+	 */
+	private byte[] metricsResponse() {
+		StringBuilder body = new StringBuilder();
+		imageProcessor.getMetrics().appendText(body);
+		for (ClientStats stats : getClientStats()) {
+			body.append("vision_stream_sent_frames{client=\"").append(stats.getAddress()).append("\"} ")
+					.append(stats.getSentFrames()).append('\n');
+			body.append("vision_stream_dropped_frames{client=\"").append(stats.getAddress()).append("\"} ")
+					.append(stats.getDroppedFrames()).append('\n');
+		}
+		byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+		String header = "HTTP/1.0 200 OK" + CRLF
+				+ "Connection: close" + CRLF
+				+ "Cache-Control: no-cache" + CRLF
+				+ "Content-type: text/plain; charset=utf-8" + CRLF
+				+ "Content-Length: " + content.length + CRLF
+				+ CRLF;
+		byte[] headerBytes = header.getBytes(StandardCharsets.US_ASCII);
+		byte[] response = new byte[headerBytes.length + content.length];
+		System.arraycopy(headerBytes, 0, response, 0, headerBytes.length);
+		System.arraycopy(content, 0, response, headerBytes.length, content.length);
+		return response;
+	}
+
+	/**
+	 * @return a snapshot of the connected viewers and how many frames each was sent or missed
+	 */
+	public List<ClientStats> getClientStats() {
+		List<ClientStats> stats = new ArrayList<>();
+		for (Client client : clients) {
+			stats.add(new ClientStats(client.address, client.sentFrames, client.droppedFrames));
+		}
+		return stats;
+	}
+
+	/**
+	 * Frame the newest image, if there is a new one, and start sending it to every client
+	 * that has finished writing the previous one.
+	 */
+	private void sendLatestFrame() {
+		JpegFrame latest = imageProcessor.getLatestFrame();
+		if (latest == null || (currentFrame != null && latest.getSequence() <= currentFrame.sequence)) {
+			return;
+		}
+		if (currentFrame != null) {
+			release(currentFrame);
+		}
+		currentFrame = createFrame(latest);
+
+		for (Client client : clients) {
+			if (client.isIdle()) {
+				try {
+					client.send(currentFrame);
+				} catch (IOException e) {
+					LOG.info("Connection from {} closed: {}", client.address, e.getMessage());
+					client.close();
+				}
+			}
+		}
+	}
+
+	private Frame createFrame(JpegFrame jpeg) {
+		byte[] image = jpeg.getData();
+		byte[] header = partHeader(image.length);
+		int size = header.length + image.length + FRAME_TRAILER.length;
+
+		Frame frame = framePool.poll();
+		if (frame == null || frame.buffer.capacity() < size) {
+			// leave some room so slightly bigger images don't need a new buffer
+			frame = new Frame(ByteBuffer.allocateDirect(size + size / 4));
+		}
+		writePart(frame.buffer, header, image);
+		frame.references = 1;
+		frame.sequence = jpeg.getSequence();
+		return frame;
+	}
+
+	static byte[] partHeader(int contentLength) {
+		return new StringBuilder()
+				.append("--").append(BOUNDARY).append(CRLF)
+				.append("Content-type: image/jpeg").append(CRLF)
+				.append("Content-Length: ").append(contentLength).append(CRLF)
+				.append(CRLF)
+				.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Fill the buffer with one multipart part holding the image, ready to be written.
+	 */
+	static void writePart(ByteBuffer buffer, byte[] header, byte[] image) {
+		buffer.clear();
+		buffer.put(header).put(image).put(FRAME_TRAILER);
+		buffer.flip();
+	}
+
+	private void release(Frame frame) {
+		if (--frame.references == 0 && framePool.size() < MAX_POOLED_FRAMES) {
+			framePool.push(frame);
+		}
+	}
+
 	private class WebcamExceptionHandler implements UncaughtExceptionHandler {
 
 		@Override
@@ -86,141 +283,174 @@ public class MJpegStreamer implements ThreadFactory, Runnable {
 		}
 	}
 
-	private class Connection implements Runnable {
-		private Socket socket = null;
+	/**
+	 * A framed JPEG shared by every client sending it, recycled once nobody references it.
+	 */
+	private static class Frame {
+		private final ByteBuffer buffer;
+		private int references;
+		private long sequence;
 
-		public Connection(Socket socket) {
-			this.socket = socket;
+		Frame(ByteBuffer buffer) {
+			this.buffer = buffer;
 		}
-		
-		@Override
-		public void run() {
-			LOG.info("run");
-			BufferedReader br = null;
-			BufferedOutputStream bos = null;
-			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+	}
 
-			try {
-				br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-				bos = new BufferedOutputStream(socket.getOutputStream());
-			} catch (IOException e) {
-				LOG.error("Fatal I/O exception when creating socket streams", e);
-				try {
-					socket.close();
-				} catch (IOException e1) {
-					LOG.error("Canot close socket connection from " + socket.getRemoteSocketAddress(), e1);
+	private class Client {
+		private final SocketChannel channel;
+		private final SelectionKey key;
+		private final SocketAddress address;
+		private final ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+		// response header followed by the current frame, written with one gathering write
+		private final ByteBuffer[] pending = { EMPTY, EMPTY };
+		private Frame frame;
+		private boolean streaming;
+		private boolean closeAfterWrite;
+		private long lastSequence;
+		private volatile long sentFrames;
+		private volatile long droppedFrames;
+
+		Client(SocketChannel channel, SelectionKey key) throws IOException {
+			this.channel = channel;
+			this.key = key;
+			this.address = channel.getRemoteAddress();
+		}
+
+		void read() throws IOException {
+			if (channel.read(request) < 0) {
+				throw new IOException("Client closed connection");
+			}
+			if (streaming) {
+				// nothing more to do with anything the client sends once streaming
+				request.clear();
+			} else if (isRequestComplete()) {
+				if (isMetricsRequest()) {
+					pending[0] = ByteBuffer.wrap(metricsResponse());
+					closeAfterWrite = true;
+					write();
+					return;
 				}
-				return;
+				streaming = true;
+				imageProcessor.addViewer();
+				pending[0] = ByteBuffer.wrap(RESPONSE_HEADER);
+				if (currentFrame != null) {
+					send(currentFrame);
+				} else {
+					write();
+				}
+			} else if (!request.hasRemaining()) {
+				throw new IOException("Request too large");
 			}
+		}
 
-			// consume whole input
-			try {
-				while (br.ready()) {
-					br.readLine();
+		private boolean isMetricsRequest() {
+			byte[] prefix = METRICS_REQUEST;
+			if (request.position() < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (request.get(i) != prefix[i]) {
+					return false;
 				}
-			} catch (IOException e) {
-				LOG.error("Error when reading input", e);
-				return;
 			}
+			return true;
+		}
 
-
-			try {
-
-				socket.setSoTimeout(0);
-				socket.setKeepAlive(false);
-				socket.setTcpNoDelay(true);
-
-				while (true) {
-
-					StringBuilder sb = new StringBuilder();
-					sb.append("HTTP/1.0 200 OK").append(CRLF);
-					sb.append("Connection: close").append(CRLF);
-					sb.append("Cache-Control: no-cache").append(CRLF);
-					sb.append("Cache-Control: private").append(CRLF);
-					sb.append("Pragma: no-cache").append(CRLF);
-					sb.append("Content-type: multipart/x-mixed-replace; boundary=--").append(BOUNDARY).append(CRLF);
-					sb.append(CRLF);
-
-					bos.write(sb.toString().getBytes());
-
-					do {
-
-						if (socket.isInputShutdown() || socket.isClosed()) {
-							br.close();
-							bos.close();
-							return;
-						}
-
-						baos.reset();
-						byte[] latestImage = imageProcessor.getLatestImage();
-						baos.write(latestImage);
-
-						sb.delete(0, sb.length());
-						sb.append("--").append(BOUNDARY).append(CRLF);
-						sb.append("Content-type: image/jpeg").append(CRLF);
-						sb.append("Content-Length: ").append(baos.size()).append(CRLF);
-						sb.append(CRLF);
-
-						try {
-							bos.write(sb.toString().getBytes());
-							bos.write(baos.toByteArray());
-							bos.write(CRLF.getBytes());
-							bos.flush();
-						} catch (SocketException e) {
-							LOG.error("Socket exception from " + socket.getRemoteSocketAddress(), e);
-							br.close();
-							bos.close();
-							return;
-						}
-
-						Thread.sleep((long)(1 / (double)visionTable.getFPS() * 1000));
-
-					} while (true);
+		private boolean isRequestComplete() {
+			int end = request.position();
+			for (int i = 3; i < end; i++) {
+				if (request.get(i - 3) == '\r' && request.get(i - 2) == '\n' && request.get(i - 1) == '\r' && request.get(i) == '\n') {
+					return true;
 				}
-			} catch (Exception e) {
+			}
+			return false;
+		}
 
-				String message = e.getMessage();
+		boolean isIdle() {
+			return streaming && frame == null && !pending[0].hasRemaining();
+		}
 
-				if (message != null) {
-					if (message.startsWith("Software caused connection abort")) {
-						LOG.info("User closed stream");
-						return;
-					}
-					if (message.startsWith("Broken pipe")) {
-						LOG.info("User connection broken");
-						return;
-					}
-				}
+		void send(Frame next) throws IOException {
+			long dropped = lastSequence != 0 ? next.sequence - lastSequence - 1 : 0;
+			droppedFrames += dropped;
+			lastSequence = next.sequence;
+			sentFrames++;
+			imageProcessor.getStreamGovernor().recordDelivery(dropped);
+			next.references++;
+			frame = next;
+			pending[1] = next.buffer.duplicate();
+			write();
+		}
 
-				LOG.error("Error", e);
+		void write() throws IOException {
+			channel.write(pending);
+			if (pending[0].hasRemaining() || pending[1].hasRemaining()) {
+				// socket buffer is full, finish when it becomes writable again
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+				return;
+			}
+			pending[0] = EMPTY;
+			pending[1] = EMPTY;
+			if (closeAfterWrite) {
+				close();
+				return;
+			}
+			if (frame != null) {
+				release(frame);
+				frame = null;
+			}
+			key.interestOps(SelectionKey.OP_READ);
 
-				try {
-					bos.write("HTTP/1.0 501 Internal Server Error\r\n\r\n\r\n".getBytes());
-				} catch (IOException e1) {
-					LOG.error("Not ablte to write to output stream", e);
-				}
+			// catch up straight to the newest frame if one arrived while we were writing
+			if (streaming && currentFrame != null && currentFrame.sequence > lastSequence) {
+				send(currentFrame);
+			}
+		}
 
-			} finally {
-				for (Closeable closeable : new Closeable[] { br, bos, baos }) {
-					try {
-						closeable.close();
-					} catch (IOException e) {
-						LOG.error("Cannot close socket", e);
-					}
-				}
-				try {
-					socket.close();
-				} catch (IOException e) {
-					LOG.error("Cannot close socket", e);
-				}
+		void close() {
+			LOG.info("Closing connection from {} after {} frames, {} dropped", address, sentFrames, droppedFrames);
+			clients.remove(this);
+			if (streaming) {
+				streaming = false;
+				imageProcessor.removeViewer();
+			}
+			if (frame != null) {
+				release(frame);
+				frame = null;
+			}
+			key.cancel();
+			try {
+				channel.close();
+			} catch (IOException e) {
+				LOG.error("Cannot close socket", e);
 			}
 		}
-		
-		
-		
 	}
 
-	
+	public static class ClientStats {
+		private final SocketAddress address;
+		private final long sentFrames;
+		private final long droppedFrames;
+
+		ClientStats(SocketAddress address, long sentFrames, long droppedFrames) {
+			this.address = address;
+			this.sentFrames = sentFrames;
+			this.droppedFrames = droppedFrames;
+		}
 
-	
-}
\ No newline at end of file
+		public SocketAddress getAddress() {
+			return address;
+		}
+
+		public long getSentFrames() {
+			return sentFrames;
+		}
+
+		/**
+		 * @return frames that were replaced by a newer one before the client was ready for them
+		 */
+		public long getDroppedFrames() {
+			return droppedFrames;
+		}
+	}
+}
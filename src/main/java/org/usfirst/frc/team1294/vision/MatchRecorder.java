@@ -0,0 +1,270 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs frames and the results found in them to segmented {@link FrameLog} files while the
+ * recording key is set, e.g. for the length of a match.
+ *
+ * The processing loop only copies the frame into one of a few pooled buffers and queues
+ * it; the recorder thread encodes and writes it. When every buffer is waiting to be
+ * written the frame is dropped, so a slow SD card never holds up the target output. The
+ * oldest logs are deleted to keep the directory under its quota.
+ */
+public class MatchRecorder implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MatchRecorder.class);
+
+	public static final String RECORDING_DIRECTORY = "recordings";
+
+	// frames that can be waiting to be written
+	private static final int QUEUE_CAPACITY = 4;
+	private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+	private static final long POLL_MILLIS = 500;
+
+	private final File directory;
+	private final BlockingQueue<Entry> free = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final BlockingQueue<Entry> queued = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private final MatOfByte jpegBuffer = new MatOfByte();
+	private final int[] encodeParameterValues = { Imgcodecs.IMWRITE_JPEG_QUALITY, -1 };
+	private final MatOfInt encodeParameters = new MatOfInt(encodeParameterValues);
+	private byte[] jpeg = new byte[64 * 1024];
+
+	private volatile boolean sessionEnded;
+	private volatile int quality;
+	private volatile long quotaBytes;
+	private volatile long droppedFrames;
+	private volatile long recordedFrames;
+	private Thread thread;
+
+	// only used from the processing thread
+	private boolean recording;
+	private long lastRecordNanos;
+	private long sequence;
+
+	// only used from the recorder thread
+	private FrameLogWriter segment;
+	private String sessionName;
+	private int segmentNumber;
+
+	public MatchRecorder(File directory) {
+		this.directory = directory;
+		for (int i = 0; i < QUEUE_CAPACITY; i++) {
+			free.add(new Entry());
+		}
+	}
+
+	/**
+	 * @return {@link #RECORDING_DIRECTORY} in the working directory
+	 */
+	public static File defaultDirectory() {
+		return new File(System.getProperty("user.dir"), RECORDING_DIRECTORY);
+	}
+
+	public synchronized void start() {
+		if (thread != null) {
+			return;
+		}
+		thread = new Thread(this, "recorder-thread");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queue the frame and its result for the log if recording is on and it is time for
+	 * another frame. Called from the processing loop once the result has been published.
+	 */
+	public void record(Mat frame, TargetResult result, VisionConfig config) {
+		if (thread == null) {
+			return;
+		}
+		if (!config.isRecording()) {
+			if (recording) {
+				recording = false;
+				sessionEnded = true;
+			}
+			return;
+		}
+		recording = true;
+		long now = System.nanoTime();
+		int fps = config.getRecordFps();
+		if (fps > 0 && now - lastRecordNanos < TimeUnit.SECONDS.toNanos(1) / fps) {
+			return;
+		}
+		quality = config.getRecordQuality();
+		quotaBytes = config.getRecordQuotaMb() * 1024L * 1024L;
+		Entry entry = free.poll();
+		if (entry == null) {
+			droppedFrames++;
+			return;
+		}
+		lastRecordNanos = now;
+		frame.copyTo(entry.frame);
+		entry.sequence = ++sequence;
+		// the processing loop reuses its result
+		entry.result.set(result);
+		// there are only as many entries as the queue holds
+		queued.offer(entry);
+	}
+
+	/**
+	 * Save the frame as an image file on the recorder thread, or right away if the recorder
+	 * isn't running.
+	 *
+	 * @return false if the recorder was too busy and the frame wasn't saved
+	 */
+	public boolean saveSnapshot(Mat frame, File file) {
+		if (thread == null) {
+			Imgcodecs.imwrite(file.getAbsolutePath(), frame);
+			return true;
+		}
+		Entry entry = free.poll();
+		if (entry == null) {
+			LOG.warn("Recorder busy, could not save {}", file);
+			return false;
+		}
+		frame.copyTo(entry.frame);
+		entry.snapshot = file;
+		queued.offer(entry);
+		return true;
+	}
+
+	@Override
+	public void run() {
+		while (true) {
+			Entry entry;
+			try {
+				entry = queued.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				closeSegment();
+				return;
+			}
+			if (entry != null) {
+				try {
+					if (entry.snapshot != null) {
+						Imgcodecs.imwrite(entry.snapshot.getAbsolutePath(), entry.frame);
+					} else {
+						write(entry);
+					}
+				} catch (Exception e) {
+					LOG.error("Error while recording frame", e);
+					closeSegment();
+				} finally {
+					entry.snapshot = null;
+					free.offer(entry);
+				}
+			}
+			if (sessionEnded && queued.isEmpty()) {
+				sessionEnded = false;
+				closeSegment();
+				sessionName = null;
+			}
+		}
+	}
+
+	private void write(Entry entry) throws IOException {
+		long start = System.nanoTime();
+		if (quality != encodeParameterValues[1]) {
+			encodeParameterValues[1] = quality;
+			encodeParameters.put(0, 0, encodeParameterValues);
+		}
+		Imgcodecs.imencode(".jpg", entry.frame, jpegBuffer, encodeParameters);
+		int length = (int) jpegBuffer.total();
+		if (jpeg.length < length) {
+			jpeg = new byte[length];
+		}
+		jpegBuffer.get(0, 0, jpeg);
+
+		if (segment == null) {
+			openSegment(entry.frame.cols(), entry.frame.rows());
+		}
+		segment.append(entry.sequence, entry.result, jpeg, length);
+		recordedFrames++;
+		LOG.trace("Recorded frame {} in {} us", entry.sequence, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+		if (segment.size() >= SEGMENT_BYTES) {
+			closeSegment();
+		}
+	}
+
+	private void openSegment(int width, int height) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create " + directory);
+		}
+		if (sessionName == null) {
+			sessionName = new SimpleDateFormat("'match-'yyyyMMdd-HHmmss").format(new Date());
+			segmentNumber = 0;
+		}
+		enforceQuota();
+		File file = new File(directory, String.format("%s-%03d%s", sessionName, segmentNumber++, FrameLog.EXTENSION));
+		segment = new FrameLogWriter(file, width, height);
+		LOG.info("Recording to {}", file);
+	}
+
+	private void closeSegment() {
+		if (segment == null) {
+			return;
+		}
+		try {
+			segment.close();
+			LOG.info("Closed {} with {} frames, {} recorded and {} dropped in total", segment.getFile(),
+					segment.getFrameCount(), recordedFrames, droppedFrames);
+		} catch (IOException e) {
+			LOG.error("Error while closing {}", segment.getFile(), e);
+		}
+		segment = null;
+	}
+
+	/**
+	 * Delete the oldest logs until there is room for another segment under the quota.
+	 */
+	private void enforceQuota() {
+		File[] logs = FrameLog.listLogs(directory);
+		Arrays.sort(logs, Comparator.comparingLong(File::lastModified));
+		long total = 0;
+		for (File log : logs) {
+			total += log.length();
+		}
+		for (int i = 0; i < logs.length && total + SEGMENT_BYTES > quotaBytes; i++) {
+			long length = logs[i].length();
+			if (logs[i].delete()) {
+				total -= length;
+				LOG.info("Deleted {} to stay under the recording quota", logs[i]);
+			} else {
+				LOG.warn("Could not delete {}", logs[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return frames that found every buffer still waiting to be written
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+
+	public long getRecordedFrames() {
+		return recordedFrames;
+	}
+
+	private static class Entry {
+		final Mat frame = new Mat();
+		long sequence;
+		final TargetResult result = new TargetResult();
+		File snapshot;
+	}
+}
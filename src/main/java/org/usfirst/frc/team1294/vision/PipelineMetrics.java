@@ -0,0 +1,166 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per-stage timing of the vision pipeline. Each stage records into its own
+ * {@link LatencyHistogram}; every few seconds the interval is closed, logged, published
+ * to the vision table and kept for the /metrics page of the {@link MJpegStreamer}.
+ */
+public class PipelineMetrics implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PipelineMetrics.class);
+	private static final long REPORT_INTERVAL_SECONDS = 5;
+
+	public enum Stage {
+		CAPTURE("capture"),
+		CHANGE("changeDetect"),
+		DOWNSCALE("downscale"),
+		CONVERT("cvtColor"),
+		THRESHOLD("inRange"),
+		CONTOURS("findContours"),
+		SELECT("select"),
+		PUBLISH("publish"),
+		ENCODE("encode");
+
+		private final String key;
+
+		Stage(String key) {
+			this.key = key;
+		}
+
+		public String getKey() {
+			return key;
+		}
+	}
+
+	private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+	private volatile LatencyHistogram.Snapshot[] lastReport;
+	private ScheduledExecutorService scheduler;
+	private VisionNetworkTable visionTable;
+
+	private volatile FramePacer pacer;
+	private long lastReportNanos;
+	private long lastReportFrames;
+	private volatile double achievedFps;
+
+	public PipelineMetrics() {
+		for (int i = 0; i < histograms.length; i++) {
+			histograms[i] = new LatencyHistogram();
+		}
+	}
+
+	public void record(Stage stage, long nanos) {
+		histograms[stage.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Also report the achieved frame rate and deadline misses of the processing loop.
+	 */
+	public void setPacer(FramePacer pacer) {
+		this.pacer = pacer;
+	}
+
+	/**
+	 * Start closing and reporting an interval every few seconds.
+	 *
+	 * @param visionTable where to publish each interval's percentiles, may be null
+	 */
+	public synchronized void start(VisionNetworkTable visionTable) {
+		if (scheduler != null) {
+			return;
+		}
+		this.visionTable = visionTable;
+		lastReportNanos = System.nanoTime();
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "metrics-thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleAtFixedRate(this, REPORT_INTERVAL_SECONDS, REPORT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void run() {
+		try {
+			LatencyHistogram.Snapshot[] report = snapshotAndReset();
+			lastReport = report;
+
+			StringBuilder sb = new StringBuilder("Frame timing p50/p99/max ms:");
+			for (Stage stage : Stage.values()) {
+				LatencyHistogram.Snapshot s = report[stage.ordinal()];
+				sb.append(String.format(Locale.ROOT, " %s=%.1f/%.1f/%.1f", stage.getKey(),
+						s.getPercentileMillis(0.5), s.getPercentileMillis(0.99), s.getMaxMillis()));
+				if (visionTable != null) {
+					visionTable.publishStageLatency(stage.getKey(),
+							s.getPercentileMillis(0.5), s.getPercentileMillis(0.99), s.getMaxMillis());
+				}
+			}
+			LOG.info(sb.toString());
+			reportPacing();
+		} catch (Exception e) {
+			LOG.error("Could not report pipeline metrics", e);
+		}
+	}
+
+	private void reportPacing() {
+		FramePacer pacer = this.pacer;
+		if (pacer == null) {
+			return;
+		}
+		long now = System.nanoTime();
+		long frames = pacer.getFrames();
+		achievedFps = (frames - lastReportFrames) / ((now - lastReportNanos) / 1e9);
+		lastReportNanos = now;
+		lastReportFrames = frames;
+		LOG.info(String.format(Locale.ROOT, "Processing at %.1f fps, %d overruns, %d missed deadlines",
+				achievedFps, pacer.getOverruns(), pacer.getMissedDeadlines()));
+		if (visionTable != null) {
+			visionTable.publishPacing(achievedFps, pacer.getOverruns(), pacer.getMissedDeadlines());
+		}
+	}
+
+	/**
+	 * Close the current interval for every stage.
+	 */
+	public LatencyHistogram.Snapshot[] snapshotAndReset() {
+		LatencyHistogram.Snapshot[] report = new LatencyHistogram.Snapshot[histograms.length];
+		for (int i = 0; i < histograms.length; i++) {
+			report[i] = histograms[i].snapshotAndReset();
+		}
+		return report;
+	}
+
+	/**
+	 * Render the last reported interval as plain text, one value per line.
+	 */
+	public void appendText(StringBuilder sb) {
+		LatencyHistogram.Snapshot[] report = lastReport;
+		sb.append("# frame stage latency in milliseconds over the last ")
+				.append(REPORT_INTERVAL_SECONDS).append(" second interval\n");
+		if (report == null) {
+			return;
+		}
+		for (Stage stage : Stage.values()) {
+			LatencyHistogram.Snapshot s = report[stage.ordinal()];
+			String key = stage.getKey();
+			sb.append(String.format(Locale.ROOT, "vision_stage_count{stage=\"%s\"} %d\n", key, s.getCount()));
+			sb.append(String.format(Locale.ROOT, "vision_stage_ms{stage=\"%s\",quantile=\"0.5\"} %.3f\n", key, s.getPercentileMillis(0.5)));
+			sb.append(String.format(Locale.ROOT, "vision_stage_ms{stage=\"%s\",quantile=\"0.99\"} %.3f\n", key, s.getPercentileMillis(0.99)));
+			sb.append(String.format(Locale.ROOT, "vision_stage_ms{stage=\"%s\",quantile=\"1\"} %.3f\n", key, s.getMaxMillis()));
+		}
+		FramePacer pacer = this.pacer;
+		if (pacer != null) {
+			sb.append(String.format(Locale.ROOT, "vision_fps %.2f\n", achievedFps));
+			sb.append("vision_frames_total ").append(pacer.getFrames()).append('\n');
+			sb.append("vision_overruns_total ").append(pacer.getOverruns()).append('\n');
+			sb.append("vision_missed_deadlines_total ").append(pacer.getMissedDeadlines()).append('\n');
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides which part of the frame to search. Until a target is found that is the whole
+ * frame; after that it is the last target's bounding rectangle plus padding, grown on
+ * each frame the target is missed until too many misses in a row drop back to the
+ * whole frame.
+ *
+ * Only used from the processing thread.
+ */
+public class RegionTracker {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RegionTracker.class);
+
+	// padding on each side of the target, as a fraction of its size
+	private static final double PADDING = 0.5;
+	private static final int MIN_PADDING = 16;
+	// growth on each side per missed frame, as a fraction of the region's size
+	private static final double GROWTH = 0.25;
+
+	private final Rect region = new Rect();
+	private boolean tracking;
+	private int misses;
+
+	/**
+	 * @return the area to search in the next frame, in full-frame coordinates; reused between calls
+	 */
+	public Rect getSearchRegion(int cols, int rows) {
+		if (!tracking) {
+			region.x = 0;
+			region.y = 0;
+			region.width = cols;
+			region.height = rows;
+		} else {
+			// the frame size can change under replay
+			clamp(region.x, region.y, region.x + region.width, region.y + region.height, cols, rows);
+		}
+		return region;
+	}
+
+	/**
+	 * @return true if the search is limited to the area around the last target
+	 */
+	public boolean isTracking() {
+		return tracking;
+	}
+
+	/**
+	 * The target was found, search around it in the next frame.
+	 *
+	 * @param target bounding rectangle in full-frame coordinates
+	 */
+	public void found(Rect target, int cols, int rows) {
+		int padX = Math.max(MIN_PADDING, (int) (target.width * PADDING));
+		int padY = Math.max(MIN_PADDING, (int) (target.height * PADDING));
+		clamp(target.x - padX, target.y - padY, target.x + target.width + padX, target.y + target.height + padY,
+				cols, rows);
+		if (!tracking) {
+			LOG.debug("Target acquired, tracking region {}", region);
+		}
+		tracking = true;
+		misses = 0;
+	}
+
+	/**
+	 * The target was not found in the search region.
+	 *
+	 * @param maxMisses frames in a row the target can be missed before searching the whole frame again
+	 */
+	public void lost(int cols, int rows, int maxMisses) {
+		if (!tracking) {
+			return;
+		}
+		if (++misses > maxMisses) {
+			LOG.debug("Target lost for {} frames, searching the whole frame", misses);
+			reset();
+			return;
+		}
+		int growX = Math.max(MIN_PADDING, (int) (region.width * GROWTH));
+		int growY = Math.max(MIN_PADDING, (int) (region.height * GROWTH));
+		clamp(region.x - growX, region.y - growY, region.x + region.width + growX, region.y + region.height + growY,
+				cols, rows);
+	}
+
+	/**
+	 * Go back to searching the whole frame.
+	 */
+	public void reset() {
+		tracking = false;
+		misses = 0;
+	}
+
+	private void clamp(int left, int top, int right, int bottom, int cols, int rows) {
+		region.x = Math.max(0, Math.min(left, cols));
+		region.y = Math.max(0, Math.min(top, rows));
+		region.width = Math.max(0, Math.min(right, cols) - region.x);
+		region.height = Math.max(0, Math.min(bottom, rows) - region.y);
+		if (region.width == 0 || region.height == 0) {
+			// nothing left of the old region inside the frame
+			reset();
+			getSearchRegion(cols, rows);
+		}
+	}
+}
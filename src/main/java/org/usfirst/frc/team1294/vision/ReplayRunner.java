@@ -0,0 +1,122 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+
+/**
+ * Runs recorded frames through the {@link ImageProcessor} as fast as possible and reports
+ * the target found in each frame, the per-frame latency and the overall throughput. The
+ * tracker's estimate is only reported for sources that know when their frames were
+ * captured, such as frame logs.
+ */
+public class ReplayRunner {
+
+	private final FrameSource source;
+	private final ImageProcessor imageProcessor;
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	public ReplayRunner(FrameSource source, VisionNetworkTable visionTable) {
+		this.source = source;
+		this.imageProcessor = new ImageProcessor(source, visionTable);
+	}
+
+	/**
+	 * @param path a frame log, a directory of frame logs or images, or a video file
+	 */
+	public static FrameSource openSource(String path) {
+		File file = new File(path);
+		if (path.endsWith(FrameLog.EXTENSION) || (file.isDirectory() && FrameLog.listLogs(file).length > 0)) {
+			return new FrameLogFrameSource(file);
+		}
+		if (file.isDirectory()) {
+			return new ImageDirectoryFrameSource(file);
+		}
+		return new VideoFileFrameSource(path);
+	}
+
+	/**
+	 * Threshold every frame with both the HLS and lookup table engines and report any
+	 * pixels where their masks differ.
+	 * 
+	 * @return true if every mask was identical
+	 */
+	public static boolean compareThresholdEngines(FrameSource source, VisionConfig config) {
+		PipelineMetrics metrics = new PipelineMetrics();
+		ThresholdEngine hls = new HlsThresholdEngine(metrics);
+		LutThresholdEngine lut = new LutThresholdEngine(metrics, hls);
+		lut.prepare(config);
+		Mat frame = new Mat();
+		Mat hlsMask = new Mat();
+		Mat lutMask = new Mat();
+		Mat difference = new Mat();
+		long frames = 0;
+		long mismatchedFrames = 0;
+		try {
+			while (source.read(frame)) {
+				frames++;
+				hls.apply(frame, config, hlsMask);
+				lut.apply(frame, config, lutMask);
+				Core.compare(hlsMask, lutMask, difference, Core.CMP_NE);
+				int mismatched = Core.countNonZero(difference);
+				if (mismatched > 0) {
+					mismatchedFrames++;
+					System.out.println(String.format("frame %d: %d pixels differ", frames, mismatched));
+				}
+			}
+		} finally {
+			source.close();
+			frame.release();
+			hlsMask.release();
+			lutMask.release();
+			difference.release();
+		}
+		System.out.println(String.format("Compared %d frames, %d with differing masks", frames, mismatchedFrames));
+		return mismatchedFrames == 0;
+	}
+
+	public void run() {
+		Mat frame = new Mat();
+		long frames = 0;
+		long acquired = 0;
+		long start = System.nanoTime();
+		try {
+			while (source.read(frame)) {
+				long frameStart = System.nanoTime();
+				// the tracker needs the time between captures, not between replayed frames
+				long captureNanos = source.getCaptureNanos();
+				TargetResult result = captureNanos != 0 ? imageProcessor.processFrame(frame, captureNanos)
+						: imageProcessor.processFrame(frame);
+				long frameTime = System.nanoTime() - frameStart;
+				latency.record(frameTime);
+				frames++;
+				if (result.isAcquired()) {
+					acquired++;
+				}
+				if (source instanceof FrameLogFrameSource) {
+					// re-analysing a recording, e.g. with new thresholds, so show what was found at the time
+					System.out.println(String.format(Locale.ROOT, "frame %d: %s (recorded %s), %s in %.2f ms", frames, result,
+							((FrameLogFrameSource) source).getRecordedResult(), imageProcessor.getLastTrack(), frameTime / 1e6));
+				} else if (captureNanos != 0) {
+					System.out.println(String.format(Locale.ROOT, "frame %d: %s, %s in %.2f ms", frames, result,
+							imageProcessor.getLastTrack(), frameTime / 1e6));
+				} else {
+					// without capture times the tracker's velocities would be scaled by the replay speed
+					System.out.println(String.format(Locale.ROOT, "frame %d: %s in %.2f ms", frames, result, frameTime / 1e6));
+				}
+			}
+		} finally {
+			source.close();
+			frame.release();
+		}
+
+		double seconds = (System.nanoTime() - start) / 1e9;
+		LatencyHistogram.Snapshot s = latency.snapshotAndReset();
+		System.out.println(String.format(Locale.ROOT,
+				"Processed %d frames in %.2f s (%.1f fps), target acquired in %d; latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+				frames, seconds, seconds > 0 ? frames / seconds : 0, acquired,
+				s.getPercentileMillis(0.5), s.getPercentileMillis(0.99), s.getMaxMillis()));
+	}
+}
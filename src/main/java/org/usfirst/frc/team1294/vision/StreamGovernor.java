@@ -0,0 +1,203 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides the JPEG quality and frame rate of the video stream from how loaded the system
+ * is, so a heavy stream never delays target data. Once a second it compares the frame
+ * processing time, the CPU load and the share of frames MJPEG clients couldn't keep up
+ * with against their budgets:
+ * <ul>
+ * <li>over the frame time or CPU budget it lowers the stream frame rate first, then the quality</li>
+ * <li>over the backlog budget it lowers the quality first, then the frame rate</li>
+ * <li>well under every budget it raises the frame rate, then the quality, one step at a time</li>
+ * </ul>
+ * Target detection itself always runs at the configured fps; only frames sent to the stream
+ * are skipped.
+ */
+public class StreamGovernor {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StreamGovernor.class);
+
+	private static final long EVALUATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final int QUALITY_STEP_DOWN = 10;
+	private static final int QUALITY_STEP_UP = 5;
+	private static final double FPS_STEP_DOWN = 0.75;
+	// only step back up when every measurement is below this fraction of its budget
+	private static final double HEADROOM = 0.7;
+	// weight of the newest frame in the smoothed frame time
+	private static final double FRAME_TIME_SMOOTHING = 0.2;
+	// frames arrive at the processing rate, allow for jitter when deciding whether one is due
+	private static final double STREAM_PERIOD_TOLERANCE = 0.9;
+
+	private final OperatingSystemMXBean osBean = ManagementFactory.getOperatingSystemMXBean();
+	private final VisionNetworkTable visionTable;
+
+	// only touched by the processing thread
+	private double frameTimeMillis;
+	private long lastEvaluation = System.nanoTime();
+	private long lastStreamed;
+	private long lastSent;
+	private long lastDropped;
+	// false while the governor is switched off, so switching it back on decides afresh
+	private boolean governing;
+
+	private volatile int quality = -1;
+	private volatile int streamFps = -1;
+
+	// updated by the MJPEG server
+	private final AtomicLong sentFrames = new AtomicLong();
+	private final AtomicLong droppedFrames = new AtomicLong();
+
+	/**
+	 * @param visionTable where to publish decisions, may be null
+	 */
+	public StreamGovernor(VisionNetworkTable visionTable) {
+		this.visionTable = visionTable;
+	}
+
+	/**
+	 * @param nanos time taken to process one frame
+	 */
+	public void recordFrameTime(long nanos) {
+		double millis = nanos / 1e6;
+		frameTimeMillis = frameTimeMillis == 0 ? millis : frameTimeMillis + FRAME_TIME_SMOOTHING * (millis - frameTimeMillis);
+	}
+
+	/**
+	 * Record a frame sent to a stream client.
+	 *
+	 * @param dropped frames the client skipped to get to this one because it couldn't keep up
+	 */
+	public void recordDelivery(long dropped) {
+		sentFrames.incrementAndGet();
+		if (dropped > 0) {
+			droppedFrames.addAndGet(dropped);
+		}
+	}
+
+	/**
+	 * Called for each processed frame while someone is watching.
+	 *
+	 * @return true if this frame should be annotated and sent to the stream
+	 */
+	public boolean shouldStream(VisionConfig config) {
+		long now = System.nanoTime();
+		if (!config.isStreamGovernor()) {
+			governing = false;
+			quality = config.getQuality();
+			streamFps = 0;
+			lastStreamed = now;
+			return true;
+		}
+		if (!governing || now - lastEvaluation >= EVALUATE_INTERVAL_NANOS) {
+			evaluate(config);
+			lastEvaluation = now;
+			governing = true;
+		}
+		// evaluate() never sets less than 1 fps, but a bad rate must not stop the frame
+		long period = TimeUnit.SECONDS.toNanos(1) / Math.max(1, streamFps);
+		if (lastStreamed != 0 && now - lastStreamed < period * STREAM_PERIOD_TOLERANCE) {
+			return false;
+		}
+		lastStreamed = now;
+		return true;
+	}
+
+	/**
+	 * @return JPEG quality for the next streamed frame
+	 */
+	public int getQuality() {
+		return quality;
+	}
+
+	/**
+	 * @return the stream frame rate limit, 0 when the governor is off
+	 */
+	public int getStreamFps() {
+		return streamFps;
+	}
+
+	private void evaluate(VisionConfig config) {
+		int maxQuality = config.getQuality();
+		int minQuality = Math.min(config.getStreamMinQuality(), maxQuality);
+		int maxFps = Math.max(1, config.getStreamMaxFps());
+		int minFps = Math.max(1, Math.min(config.getStreamMinFps(), maxFps));
+		int newQuality = quality < 0 ? maxQuality : clamp(quality, minQuality, maxQuality);
+		int newFps = streamFps <= 0 ? maxFps : clamp(streamFps, minFps, maxFps);
+
+		double cpuPercent = cpuLoad() * 100;
+		long sent = sentFrames.get();
+		long dropped = droppedFrames.get();
+		long delivered = (sent - lastSent) + (dropped - lastDropped);
+		double backlogPercent = delivered == 0 ? 0 : (dropped - lastDropped) * 100.0 / delivered;
+		lastSent = sent;
+		lastDropped = dropped;
+
+		double frameLoad = ratio(frameTimeMillis, config.getFrameBudgetMs());
+		double cpuRatio = ratio(cpuPercent, config.getCpuBudget());
+		double backlogRatio = ratio(backlogPercent, config.getBacklogBudget());
+
+		if (frameLoad > 1 || cpuRatio > 1) {
+			if (newFps > minFps) {
+				newFps = lowerFps(newFps, minFps);
+			} else {
+				newQuality = Math.max(minQuality, newQuality - QUALITY_STEP_DOWN);
+			}
+		} else if (backlogRatio > 1) {
+			if (newQuality > minQuality) {
+				newQuality = Math.max(minQuality, newQuality - QUALITY_STEP_DOWN);
+			} else {
+				newFps = lowerFps(newFps, minFps);
+			}
+		} else if (Math.max(frameLoad, Math.max(cpuRatio, backlogRatio)) < HEADROOM) {
+			if (newFps < maxFps) {
+				newFps++;
+			} else {
+				newQuality = Math.min(maxQuality, newQuality + QUALITY_STEP_UP);
+			}
+		}
+
+		if (newQuality != quality || newFps != streamFps) {
+			LOG.debug("Stream quality {} at {} fps (frame {} ms, cpu {}%, backlog {}%)", newQuality, newFps,
+					(int) frameTimeMillis, (int) cpuPercent, (int) backlogPercent);
+		}
+		quality = newQuality;
+		streamFps = newFps;
+		if (visionTable != null) {
+			visionTable.publishStreamGovernor(newQuality, newFps, frameTimeMillis, cpuPercent, backlogPercent);
+		}
+	}
+
+	/**
+	 * @return the measurement as a fraction of its budget, 0 if either is unset
+	 */
+	private static double ratio(double measured, int budget) {
+		return measured < 0 || budget <= 0 ? 0 : measured / budget;
+	}
+
+	private static int lowerFps(int fps, int minFps) {
+		return Math.max(minFps, Math.min(fps - 1, (int) (fps * FPS_STEP_DOWN)));
+	}
+
+	private static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(value, max));
+	}
+
+	/**
+	 * @return system CPU load between 0 and 1, or negative if not available
+	 */
+	private double cpuLoad() {
+		if (osBean instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) osBean).getSystemCpuLoad();
+		}
+		double loadAverage = osBean.getSystemLoadAverage();
+		return loadAverage < 0 ? -1 : loadAverage / osBean.getAvailableProcessors();
+	}
+}
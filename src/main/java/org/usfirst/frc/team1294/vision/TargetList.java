@@ -0,0 +1,91 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.Arrays;
+
+import org.opencv.core.Rect;
+
+/**
+ * The best few targets found in one frame, best first, as parallel arrays that are reused
+ * from frame to frame.
+ *
+ * @see VisionNetworkTable#publishTargets(TargetList)
+ */
+public class TargetList {
+
+	private double[] x = new double[0];
+	private double[] y = new double[0];
+	private double[] left = new double[0];
+	private double[] top = new double[0];
+	private double[] width = new double[0];
+	private double[] height = new double[0];
+	private double[] area = new double[0];
+	private double[] score = new double[0];
+	private int count;
+
+	public void clear() {
+		count = 0;
+	}
+
+	/**
+	 * @param x midpoint between the upper corners
+	 * @param y midpoint between the upper corners
+	 */
+	public void add(double x, double y, Rect boundingRect, double area, double score) {
+		if (count == this.x.length) {
+			int capacity = Math.max(4, count * 2);
+			this.x = Arrays.copyOf(this.x, capacity);
+			this.y = Arrays.copyOf(this.y, capacity);
+			left = Arrays.copyOf(left, capacity);
+			top = Arrays.copyOf(top, capacity);
+			width = Arrays.copyOf(width, capacity);
+			height = Arrays.copyOf(height, capacity);
+			this.area = Arrays.copyOf(this.area, capacity);
+			this.score = Arrays.copyOf(this.score, capacity);
+		}
+		this.x[count] = x;
+		this.y[count] = y;
+		left[count] = boundingRect.x;
+		top[count] = boundingRect.y;
+		width[count] = boundingRect.width;
+		height[count] = boundingRect.height;
+		this.area[count] = area;
+		this.score[count] = score;
+		count++;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public double getX(int i) {
+		return x[i];
+	}
+
+	public double getY(int i) {
+		return y[i];
+	}
+
+	public double getLeft(int i) {
+		return left[i];
+	}
+
+	public double getTop(int i) {
+		return top[i];
+	}
+
+	public double getWidth(int i) {
+		return width[i];
+	}
+
+	public double getHeight(int i) {
+		return height[i];
+	}
+
+	public double getArea(int i) {
+		return area[i];
+	}
+
+	public double getScore(int i) {
+		return score[i];
+	}
+}
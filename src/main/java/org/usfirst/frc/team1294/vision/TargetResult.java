@@ -0,0 +1,101 @@
+package org.usfirst.frc.team1294.vision;
+
+/**
+ * The target found in one frame, published to the robot as a single record.
+ *
+ * The processing loop fills the same instance every frame so the steady state doesn't
+ * allocate; anything that keeps a result past the call it was handed to copies it with
+ * {@link #set(TargetResult)}.
+ *
+ * @see VisionNetworkTable#publishTarget(TargetResult)
+ */
+public final class TargetResult {
+
+	private boolean acquired;
+	private int x;
+	private int y;
+	private long timestamp;
+	private long captureTimestamp;
+	private double latencyMillis;
+
+	/**
+	 * Creates a holder with no target, to be filled with {@link #set}.
+	 */
+	public TargetResult() {
+	}
+
+	/**
+	 * @param captureTimestamp wall clock time in milliseconds the frame was captured
+	 * @param latencyMillis time from capturing the frame to producing this result
+	 */
+	public TargetResult(boolean acquired, int x, int y, long timestamp, long captureTimestamp, double latencyMillis) {
+		set(acquired, x, y, timestamp, captureTimestamp, latencyMillis);
+	}
+
+	/**
+	 * @return this, holding the given values
+	 * @see #TargetResult(boolean, int, int, long, long, double)
+	 */
+	public TargetResult set(boolean acquired, int x, int y, long timestamp, long captureTimestamp, double latencyMillis) {
+		this.acquired = acquired;
+		this.x = x;
+		this.y = y;
+		this.timestamp = timestamp;
+		this.captureTimestamp = captureTimestamp;
+		this.latencyMillis = latencyMillis;
+		return this;
+	}
+
+	/**
+	 * @return this, holding a copy of the other result
+	 */
+	public TargetResult set(TargetResult other) {
+		return set(other.acquired, other.x, other.y, other.timestamp, other.captureTimestamp, other.latencyMillis);
+	}
+
+	public boolean isAcquired() {
+		return acquired;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return wall clock time in milliseconds the result was produced
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return wall clock time in milliseconds the frame behind the result was captured
+	 */
+	public long getCaptureTimestamp() {
+		return captureTimestamp;
+	}
+
+	/**
+	 * @return milliseconds from capturing the frame to producing the result, measured on a
+	 *         monotonic clock; how far the robot has to look back to aim at where the target was
+	 */
+	public double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * @return true if both results describe the same target, ignoring when they were produced
+	 */
+	public boolean sameTarget(TargetResult other) {
+		return other != null && acquired == other.acquired && x == other.x && y == other.y;
+	}
+
+	@Override
+	public String toString() {
+		return acquired ? String.format("target at (%d, %d)", x, y) : "no target";
+	}
+}
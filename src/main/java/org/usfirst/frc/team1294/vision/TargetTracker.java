@@ -0,0 +1,121 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smooths the target midpoint with a constant velocity Kalman filter, one per axis, and
+ * keeps predicting it through frames where the target isn't found so a short dropout
+ * doesn't make the robot lose aim. Time between frames comes from their capture times,
+ * so skipped frames are accounted for.
+ *
+ * Only used from the processing thread.
+ */
+public class TargetTracker {
+
+	// how far the target can accelerate across the image, in pixels per second squared
+	private static final double ACCELERATION_NOISE = 400;
+	// how far a detected midpoint can be off, in pixels
+	private static final double MEASUREMENT_NOISE = 3;
+	// position uncertainty given to a new track, in pixels
+	private static final double INITIAL_POSITION_UNCERTAINTY = 10;
+	// velocity uncertainty given to a new track, in pixels per second
+	private static final double INITIAL_VELOCITY_UNCERTAINTY = 500;
+	// position uncertainty, in pixels, at which the confidence reaches 0
+	private static final double MAX_POSITION_UNCERTAINTY = 50;
+	// frames further apart than this start a new track instead of predicting across the gap
+	private static final long MAX_GAP_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final Axis xAxis = new Axis();
+	private final Axis yAxis = new Axis();
+	// handed out by every update that has an estimate
+	private final TrackedTarget estimate = new TrackedTarget();
+	private boolean tracking;
+	private int framesSinceSeen;
+	private long lastCaptureNanos;
+
+	/**
+	 * Advance the filter to the frame's capture time and correct it with the frame's result.
+	 *
+	 * @param result what was found in the frame
+	 * @param captureNanos System.nanoTime() when the frame was captured
+	 * @param maxMisses frames in a row the target can be missing before the track is dropped
+	 * @return the estimate, valid until the next update
+	 */
+	public TrackedTarget update(TargetResult result, long captureNanos, int maxMisses) {
+		double dt = (captureNanos - lastCaptureNanos) / 1e9;
+		boolean gap = tracking && (dt < 0 || captureNanos - lastCaptureNanos > MAX_GAP_NANOS);
+		lastCaptureNanos = captureNanos;
+
+		if (result.isAcquired()) {
+			if (!tracking || gap) {
+				xAxis.reset(result.getX());
+				yAxis.reset(result.getY());
+				tracking = true;
+			} else {
+				xAxis.predict(dt);
+				yAxis.predict(dt);
+				xAxis.correct(result.getX());
+				yAxis.correct(result.getY());
+			}
+			framesSinceSeen = 0;
+		} else if (tracking) {
+			if (gap || ++framesSinceSeen > maxMisses) {
+				tracking = false;
+			} else {
+				xAxis.predict(dt);
+				yAxis.predict(dt);
+			}
+		}
+
+		if (!tracking) {
+			return TrackedTarget.none();
+		}
+		double uncertainty = Math.sqrt(xAxis.p00 + yAxis.p00);
+		double confidence = Math.max(0, 1 - uncertainty / MAX_POSITION_UNCERTAINTY);
+		return estimate.set(true, xAxis.position, yAxis.position, xAxis.velocity, yAxis.velocity, confidence,
+				framesSinceSeen, result.getCaptureTimestamp());
+	}
+
+	/**
+	 * Position and velocity along one image axis, with their 2x2 covariance.
+	 */
+	private static class Axis {
+
+		double position;
+		double velocity;
+		double p00;
+		double p01;
+		double p11;
+
+		void reset(double measured) {
+			position = measured;
+			velocity = 0;
+			p00 = INITIAL_POSITION_UNCERTAINTY * INITIAL_POSITION_UNCERTAINTY;
+			p01 = 0;
+			p11 = INITIAL_VELOCITY_UNCERTAINTY * INITIAL_VELOCITY_UNCERTAINTY;
+		}
+
+		void predict(double dt) {
+			position += velocity * dt;
+			// P = F P F' + Q, with F = [1 dt; 0 1] and Q from white noise acceleration
+			double q = ACCELERATION_NOISE * ACCELERATION_NOISE;
+			double dt2 = dt * dt;
+			p00 += 2 * dt * p01 + dt2 * p11 + dt2 * dt2 / 4 * q;
+			p01 += dt * p11 + dt2 * dt / 2 * q;
+			p11 += dt2 * q;
+		}
+
+		void correct(double measured) {
+			double innovation = measured - position;
+			double s = p00 + MEASUREMENT_NOISE * MEASUREMENT_NOISE;
+			double k0 = p00 / s;
+			double k1 = p01 / s;
+			position += k0 * innovation;
+			velocity += k1 * innovation;
+			// P = (I - K H) P, with H = [1 0]
+			p11 -= k1 * p01;
+			p00 -= k0 * p00;
+			p01 -= k0 * p01;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Mat;
+
+/**
+ * Turns a BGR frame into a mask of the pixels inside the configured HLS thresholds.
+ */
+public interface ThresholdEngine {
+
+	/**
+	 * @param frame the BGR image, may be a submat
+	 * @param config the thresholds to apply
+	 * @param mask receives 255 for pixels inside the thresholds and 0 elsewhere, same size as frame
+	 */
+	void apply(Mat frame, VisionConfig config, Mat mask);
+}
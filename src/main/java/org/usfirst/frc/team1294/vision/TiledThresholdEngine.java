@@ -0,0 +1,152 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the HLS conversion and threshold over horizontal bands of the frame in parallel,
+ * each band writing straight into its rows of the shared mask. The calling thread does
+ * the first band itself, so n threads means n - 1 pool workers.
+ *
+ * The bands together cover every pixel exactly once and cvtColor and inRange are both
+ * per-pixel, so the mask is identical to {@link HlsThresholdEngine}'s. The time for the
+ * whole parallel step is recorded as the threshold stage.
+ */
+public class TiledThresholdEngine implements ThresholdEngine {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TiledThresholdEngine.class);
+
+	private final PipelineMetrics metrics;
+	// the band engines' own stage timings overlap each other, so they are not reported
+	private final PipelineMetrics bandMetrics = new PipelineMetrics();
+	private final List<Band> bands = new ArrayList<>();
+	private final List<Future<?>> pending = new ArrayList<>();
+	private ExecutorService pool;
+
+	public TiledThresholdEngine(PipelineMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @return threads clamped to between 1 and the number of processors
+	 */
+	static int clampThreads(int threads) {
+		return Math.max(1, Math.min(threads, Runtime.getRuntime().availableProcessors()));
+	}
+
+	@Override
+	public void apply(Mat frame, VisionConfig config, Mat mask) {
+		int threads = clampThreads(config.getThresholdThreads());
+		if (threads != bands.size()) {
+			resize(threads);
+		}
+
+		long start = System.nanoTime();
+		mask.create(frame.rows(), frame.cols(), CvType.CV_8UC1);
+		for (int i = 0; i < bands.size(); i++) {
+			bands.get(i).prepare(frame, mask, config, i, bands.size());
+		}
+		for (int i = 1; i < bands.size(); i++) {
+			pending.add(pool.submit(bands.get(i)));
+		}
+		Throwable failure = null;
+		try {
+			bands.get(0).call();
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		// wait for every band, even after a failure, since the submats are released below
+		boolean interrupted = false;
+		for (int i = 0; i < pending.size(); i++) {
+			try {
+				pending.get(i).get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause();
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+				i--;
+			}
+		}
+		pending.clear();
+		for (int i = 0; i < bands.size(); i++) {
+			bands.get(i).release();
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			throw new IllegalStateException("Threshold band failed", failure);
+		}
+		metrics.record(PipelineMetrics.Stage.THRESHOLD, System.nanoTime() - start);
+	}
+
+	private void resize(int threads) {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		bands.clear();
+		for (int i = 0; i < threads; i++) {
+			bands.add(new Band(new HlsThresholdEngine(bandMetrics)));
+		}
+		if (threads > 1) {
+			pool = Executors.newFixedThreadPool(threads - 1, r -> {
+				Thread thread = new Thread(r, "threshold-thread");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		LOG.info("Thresholding in {} bands", threads);
+	}
+
+	/**
+	 * One band of rows, with its own engine so the working HLS image is not shared.
+	 */
+	private static class Band implements Callable<Void> {
+
+		private final ThresholdEngine engine;
+		private Mat frameBand;
+		private Mat maskBand;
+		private VisionConfig config;
+
+		Band(ThresholdEngine engine) {
+			this.engine = engine;
+		}
+
+		void prepare(Mat frame, Mat mask, VisionConfig config, int index, int count) {
+			int rowStart = frame.rows() * index / count;
+			int rowEnd = frame.rows() * (index + 1) / count;
+			this.frameBand = frame.rowRange(rowStart, rowEnd);
+			this.maskBand = mask.rowRange(rowStart, rowEnd);
+			this.config = config;
+		}
+
+		@Override
+		public Void call() {
+			// the mask band already has the right size and type, so inRange writes into the shared mask
+			engine.apply(frameBand, config, maskBand);
+			return null;
+		}
+
+		void release() {
+			if (frameBand != null) {
+				frameBand.release();
+				maskBand.release();
+				frameBand = null;
+				maskBand = null;
+			}
+		}
+	}
+}
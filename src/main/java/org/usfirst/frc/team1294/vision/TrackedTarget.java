@@ -0,0 +1,106 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.Locale;
+
+/**
+ * The tracker's estimate of the target for one frame: where it is, how fast it is moving
+ * across the image and how much to trust that. The tracker updates the same instance every
+ * frame, so it is only valid until the next update.
+ *
+ * @see TargetTracker
+ */
+public final class TrackedTarget {
+
+	private static final TrackedTarget NONE = new TrackedTarget(false, 0, 0, 0, 0, 0, 0, 0);
+
+	private boolean tracking;
+	private double x;
+	private double y;
+	private double velocityX;
+	private double velocityY;
+	private double confidence;
+	private int framesSinceSeen;
+	private long captureTimestamp;
+
+	TrackedTarget() {
+	}
+
+	TrackedTarget(boolean tracking, double x, double y, double velocityX, double velocityY, double confidence,
+			int framesSinceSeen, long captureTimestamp) {
+		set(tracking, x, y, velocityX, velocityY, confidence, framesSinceSeen, captureTimestamp);
+	}
+
+	TrackedTarget set(boolean tracking, double x, double y, double velocityX, double velocityY, double confidence,
+			int framesSinceSeen, long captureTimestamp) {
+		this.tracking = tracking;
+		this.x = x;
+		this.y = y;
+		this.velocityX = velocityX;
+		this.velocityY = velocityY;
+		this.confidence = confidence;
+		this.framesSinceSeen = framesSinceSeen;
+		this.captureTimestamp = captureTimestamp;
+		return this;
+	}
+
+	public static TrackedTarget none() {
+		return NONE;
+	}
+
+	/**
+	 * @return false when there is no estimate, i.e. before the first sighting or after too many misses
+	 */
+	public boolean isTracking() {
+		return tracking;
+	}
+
+	public double getX() {
+		return x;
+	}
+
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * @return horizontal velocity in pixels per second
+	 */
+	public double getVelocityX() {
+		return velocityX;
+	}
+
+	/**
+	 * @return vertical velocity in pixels per second
+	 */
+	public double getVelocityY() {
+		return velocityY;
+	}
+
+	/**
+	 * @return between 0 and 1, falling as the position uncertainty grows
+	 */
+	public double getConfidence() {
+		return confidence;
+	}
+
+	/**
+	 * @return frames since the target was last actually found, 0 if it was found in this one
+	 */
+	public int getFramesSinceSeen() {
+		return framesSinceSeen;
+	}
+
+	/**
+	 * @return wall clock time in milliseconds of the frame the estimate is for; extrapolate
+	 *         from here with the velocity to get the position at a later time
+	 */
+	public long getCaptureTimestamp() {
+		return captureTimestamp;
+	}
+
+	@Override
+	public String toString() {
+		return tracking ? String.format(Locale.ROOT, "tracking (%.1f, %.1f) moving (%.1f, %.1f) px/s, confidence %.2f",
+				x, y, velocityX, velocityY, confidence) : "not tracking";
+	}
+}
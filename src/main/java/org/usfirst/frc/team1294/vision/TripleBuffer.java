@@ -0,0 +1,107 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Three preallocated buffers handed between one producer and one consumer thread: the
+ * producer owns one slot, the consumer owns one slot, and the third holds the newest
+ * complete item. Handing a slot over is a single atomic exchange, so neither side ever
+ * waits on the other and the consumer always gets the newest item; any items it did not
+ * get to in the meantime are simply overwritten.
+ *
+ * @param <T> the buffer type, e.g. a Mat that is filled in place
+ */
+public class TripleBuffer<T> {
+
+	private static final int SLOTS = 3;
+	private static final int INDEX_MASK = 0x3;
+	private static final int FRESH = 0x4;
+
+	private final Object[] slots = new Object[SLOTS];
+	private final long[] sequence = new long[SLOTS];
+	private final long[] timestamps = new long[SLOTS];
+
+	// index of the slot holding the newest item, plus FRESH if the consumer hasn't taken it yet
+	private final AtomicInteger latest = new AtomicInteger(1);
+	// only touched by the producer
+	private int back = 0;
+	// only touched by the consumer
+	private int front = 2;
+	private long lastSequence;
+	private long lastTimestamp;
+
+	private volatile long publishedItems;
+	private volatile long skippedItems;
+
+	public TripleBuffer(Supplier<T> factory) {
+		for (int i = 0; i < SLOTS; i++) {
+			slots[i] = factory.get();
+		}
+	}
+
+	/**
+	 * @return the slot the producer fills next; it belongs to the producer until {@link #publish}
+	 */
+	@SuppressWarnings("unchecked")
+	public T back() {
+		return (T) slots[back];
+	}
+
+	/**
+	 * Make the filled back slot the newest item and take another one to fill. Producer only.
+	 *
+	 * @param timestamp stored with the item, e.g. when it was captured
+	 */
+	public void publish(long timestamp) {
+		sequence[back] = ++publishedItems;
+		timestamps[back] = timestamp;
+		back = latest.getAndSet(back | FRESH) & INDEX_MASK;
+	}
+
+	/**
+	 * Take the newest item published since the last call. Consumer only. The returned
+	 * slot belongs to the caller until the next call to this method.
+	 *
+	 * @return the newest item, or null if nothing new has been published
+	 */
+	@SuppressWarnings("unchecked")
+	public T take() {
+		if ((latest.get() & FRESH) == 0) {
+			return null;
+		}
+		front = latest.getAndSet(front) & INDEX_MASK;
+		long itemSequence = sequence[front];
+		if (lastSequence != 0 && itemSequence > lastSequence + 1) {
+			skippedItems += itemSequence - lastSequence - 1;
+		}
+		lastSequence = itemSequence;
+		lastTimestamp = timestamps[front];
+		return (T) slots[front];
+	}
+
+	/**
+	 * @return the sequence number, counting from 1, of the item last returned by {@link #take()}
+	 */
+	public long getSequence() {
+		return lastSequence;
+	}
+
+	/**
+	 * @return the timestamp published with the item last returned by {@link #take()}
+	 */
+	public long getTimestamp() {
+		return lastTimestamp;
+	}
+
+	public long getPublishedItems() {
+		return publishedItems;
+	}
+
+	/**
+	 * @return number of items that were published but replaced by a newer one before being taken
+	 */
+	public long getSkippedItems() {
+		return skippedItems;
+	}
+}
@@ -0,0 +1,47 @@
+package org.usfirst.frc.team1294.vision;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets camera controls by running v4l2-ctl and waiting, up to a timeout, for it to exit.
+ */
+public class V4l2CtlBackend implements CameraControlBackend {
+
+	private static final String V4L2_CTL = "/usr/bin/v4l2-ctl";
+	private static final long TIMEOUT_SECONDS = 5;
+
+	@Override
+	public void set(String control, int value) throws IOException {
+		// the output goes to a file rather than a pipe, so nothing has to be read while waiting
+		// and a v4l2-ctl that hangs with stdout open can't keep the timeout from firing
+		File output = File.createTempFile("v4l2-ctl", ".log");
+		try {
+			Process process = new ProcessBuilder(V4L2_CTL, "--set-ctrl", control + "=" + value)
+					.redirectErrorStream(true)
+					.redirectOutput(output)
+					.start();
+			try {
+				if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+					process.destroyForcibly();
+					throw new IOException(V4L2_CTL + " did not exit within " + TIMEOUT_SECONDS + "s");
+				}
+				if (process.exitValue() != 0) {
+					String message = new String(Files.readAllBytes(output.toPath()), StandardCharsets.UTF_8);
+					throw new IOException(V4L2_CTL + " exited with " + process.exitValue() + ": " + message.trim());
+				}
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while setting " + control, e);
+			}
+		} finally {
+			if (!output.delete()) {
+				output.deleteOnExit();
+			}
+		}
+	}
+}
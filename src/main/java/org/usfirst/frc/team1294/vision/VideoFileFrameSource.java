@@ -0,0 +1,29 @@
+package org.usfirst.frc.team1294.vision;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+
+/**
+ * Replays the frames of a video file.
+ */
+public class VideoFileFrameSource implements FrameSource {
+
+	private VideoCapture capture;
+
+	public VideoFileFrameSource(String filename) {
+		capture = new VideoCapture(filename);
+		if (!capture.isOpened()) {
+			throw new IllegalArgumentException("Could not open video file " + filename);
+		}
+	}
+
+	@Override
+	public boolean read(Mat frame) {
+		return capture.read(frame);
+	}
+
+	@Override
+	public void close() {
+		capture.release();
+	}
+}
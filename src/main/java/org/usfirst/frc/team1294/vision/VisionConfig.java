@@ -0,0 +1,254 @@
+package org.usfirst.frc.team1294.vision;
+
+/**
+ * Immutable snapshot of the tunable values in the vision table, so the processing
+ * loop can read all of them for a frame without going through ntcore for each one.
+ *
+ * @see VisionNetworkTable#getConfig()
+ */
+public final class VisionConfig {
+
+	private final int thresholdLowH;
+	private final int thresholdLowS;
+	private final int thresholdLowL;
+	private final int thresholdHighH;
+	private final int thresholdHighS;
+	private final int thresholdHighL;
+	private final int quality;
+	private final int fps;
+	private final boolean displayMask;
+	private final int brightness;
+	private final int absoluteExposure;
+	private final boolean captureNextFrame;
+	private final boolean legacyTargetKeys;
+	private final int thresholdEngine;
+	private final int thresholdThreads;
+	private final boolean roiTracking;
+	private final int roiMaxMisses;
+	private final int pyramidScale;
+	private final boolean streamGovernor;
+	private final int streamMinQuality;
+	private final int streamMinFps;
+	private final int streamMaxFps;
+	private final int frameBudgetMs;
+	private final int cpuBudget;
+	private final int backlogBudget;
+	private final int trackerMaxMisses;
+	private final int maxTargets;
+	private final boolean changeGating;
+	private final int changeTolerance;
+	private final int changeMaxSkips;
+	private final boolean recording;
+	private final int recordFps;
+	private final int recordQuality;
+	private final int recordQuotaMb;
+	private final double minTargetArea;
+	private final double minAspectRatio;
+	private final double maxAspectRatio;
+	private final double minSolidity;
+	private final double maxSolidity;
+	private final double maxShapeDistance;
+
+	VisionConfig(VisionNetworkTable visionTable) {
+		thresholdLowH = visionTable.getThresholdLowH();
+		thresholdLowS = visionTable.getThresholdLowS();
+		thresholdLowL = visionTable.getThresholdLowL();
+		thresholdHighH = visionTable.getThresholdHighH();
+		thresholdHighS = visionTable.getThresholdHighS();
+		thresholdHighL = visionTable.getThresholdHighL();
+		quality = visionTable.getQuality();
+		fps = visionTable.getFPS();
+		displayMask = visionTable.isDisplayMask();
+		brightness = visionTable.getBrightness();
+		absoluteExposure = visionTable.getAbsoluteExposure();
+		captureNextFrame = visionTable.isCaptureNextFrame();
+		legacyTargetKeys = visionTable.isLegacyTargetKeys();
+		thresholdEngine = visionTable.getThresholdEngine();
+		thresholdThreads = visionTable.getThresholdThreads();
+		roiTracking = visionTable.isRoiTracking();
+		roiMaxMisses = visionTable.getRoiMaxMisses();
+		pyramidScale = visionTable.getPyramidScale();
+		streamGovernor = visionTable.isStreamGovernor();
+		streamMinQuality = visionTable.getStreamMinQuality();
+		streamMinFps = visionTable.getStreamMinFps();
+		streamMaxFps = visionTable.getStreamMaxFps();
+		frameBudgetMs = visionTable.getFrameBudgetMs();
+		cpuBudget = visionTable.getCpuBudget();
+		backlogBudget = visionTable.getBacklogBudget();
+		trackerMaxMisses = visionTable.getTrackerMaxMisses();
+		maxTargets = visionTable.getMaxTargets();
+		changeGating = visionTable.isChangeGating();
+		changeTolerance = visionTable.getChangeTolerance();
+		changeMaxSkips = visionTable.getChangeMaxSkips();
+		recording = visionTable.isRecording();
+		recordFps = visionTable.getRecordFps();
+		recordQuality = visionTable.getRecordQuality();
+		recordQuotaMb = visionTable.getRecordQuotaMb();
+		minTargetArea = visionTable.getMinTargetArea();
+		minAspectRatio = visionTable.getMinAspectRatio();
+		maxAspectRatio = visionTable.getMaxAspectRatio();
+		minSolidity = visionTable.getMinSolidity();
+		maxSolidity = visionTable.getMaxSolidity();
+		maxShapeDistance = visionTable.getMaxShapeDistance();
+	}
+
+	public int getThresholdLowH() {
+		return thresholdLowH;
+	}
+
+	public int getThresholdLowS() {
+		return thresholdLowS;
+	}
+
+	public int getThresholdLowL() {
+		return thresholdLowL;
+	}
+
+	public int getThresholdHighH() {
+		return thresholdHighH;
+	}
+
+	public int getThresholdHighS() {
+		return thresholdHighS;
+	}
+
+	public int getThresholdHighL() {
+		return thresholdHighL;
+	}
+
+	public int getQuality() {
+		return quality;
+	}
+
+	public int getFPS() {
+		return fps;
+	}
+
+	public boolean isDisplayMask() {
+		return displayMask;
+	}
+
+	public int getBrightness() {
+		return brightness;
+	}
+
+	public int getAbsoluteExposure() {
+		return absoluteExposure;
+	}
+
+	public boolean isCaptureNextFrame() {
+		return captureNextFrame;
+	}
+
+	public boolean isLegacyTargetKeys() {
+		return legacyTargetKeys;
+	}
+
+	public int getThresholdEngine() {
+		return thresholdEngine;
+	}
+
+	public int getThresholdThreads() {
+		return thresholdThreads;
+	}
+
+	public boolean isRoiTracking() {
+		return roiTracking;
+	}
+
+	public int getRoiMaxMisses() {
+		return roiMaxMisses;
+	}
+
+	public int getPyramidScale() {
+		return pyramidScale;
+	}
+
+	public boolean isStreamGovernor() {
+		return streamGovernor;
+	}
+
+	public int getStreamMinQuality() {
+		return streamMinQuality;
+	}
+
+	public int getStreamMinFps() {
+		return streamMinFps;
+	}
+
+	public int getStreamMaxFps() {
+		return streamMaxFps;
+	}
+
+	public int getFrameBudgetMs() {
+		return frameBudgetMs;
+	}
+
+	public int getCpuBudget() {
+		return cpuBudget;
+	}
+
+	public int getBacklogBudget() {
+		return backlogBudget;
+	}
+
+	public int getTrackerMaxMisses() {
+		return trackerMaxMisses;
+	}
+
+	public double getMinTargetArea() {
+		return minTargetArea;
+	}
+
+	public double getMinAspectRatio() {
+		return minAspectRatio;
+	}
+
+	public double getMaxAspectRatio() {
+		return maxAspectRatio;
+	}
+
+	public double getMinSolidity() {
+		return minSolidity;
+	}
+
+	public double getMaxSolidity() {
+		return maxSolidity;
+	}
+
+	public double getMaxShapeDistance() {
+		return maxShapeDistance;
+	}
+
+	public int getMaxTargets() {
+		return maxTargets;
+	}
+
+	public boolean isChangeGating() {
+		return changeGating;
+	}
+
+	public int getChangeTolerance() {
+		return changeTolerance;
+	}
+
+	public int getChangeMaxSkips() {
+		return changeMaxSkips;
+	}
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	public int getRecordFps() {
+		return recordFps;
+	}
+
+	public int getRecordQuality() {
+		return recordQuality;
+	}
+
+	public int getRecordQuotaMb() {
+		return recordQuotaMb;
+	}
+}
@@ -1,6 +1,12 @@
 package org.usfirst.frc.team1294.vision;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 import edu.wpi.first.wpilibj.networktables.NetworkTable;
+import edu.wpi.first.wpilibj.tables.ITable;
+import edu.wpi.first.wpilibj.tables.ITableListener;
 
 public class VisionNetworkTable {
 	private static final String THRESHOLD_HIGH_L = "thresholdHighL";
@@ -46,13 +52,144 @@ public class VisionNetworkTable {
 	private static final String CAPTURE_NEXT_FRAME = "captureNextFrame";
 	private static final boolean DEFAULT_CAPTURE_NEXT_FRAME = false;
 	
-	private final NetworkTable nt;
+	// one frame's result as a single number array: sequence, acquired (1/0), x, y, lastUpdated,
+	// captureTime (wall clock ms the frame was captured), latency (ms from capture to result)
+	private static final String TARGET = "target";
+	private static final int TARGET_RECORD_LENGTH = 7;
+	// ntcore only flushes every 100ms, so an unchanged target doesn't need republishing more often
+	private static final long TARGET_HEARTBEAT_MS = 100;
+	
+	// tracker estimate as a number array: tracking (1/0), x, y, velocityX, velocityY (px/s),
+	// confidence (0-1), framesSinceSeen, captureTime (wall clock ms the estimate is for)
+	private static final String TRACK = "track";
+	private static final int TRACK_RECORD_LENGTH = 8;
+	private static final String TRACKER_MAX_MISSES = "trackerMaxMisses";
+	private static final int DEFAULT_TRACKER_MAX_MISSES = 5;
+	
+	// with maxTargets above 1 the best targets are also published as one number array: sequence,
+	// count, then for each of maxTargets slots, best first, x, y, left, top, width, height, area
+	// and score; slots past the count are zero
+	private static final String MAX_TARGETS = "maxTargets";
+	private static final int DEFAULT_MAX_TARGETS = 1;
+	private static final String TARGETS = "targets";
+	private static final int TARGETS_HEADER_LENGTH = 2;
+	private static final int TARGETS_STRIDE = 8;
+	
+	// skip frames that barely differ from the last processed one and republish its result: the
+	// largest change in any cell of the frame signature, in pixel levels, still counted as the
+	// same scene, and how many frames in a row can be skipped; off unless asked for, as a skipped
+	// frame isn't streamed either
+	private static final String CHANGE_GATING = "changeGating";
+	private static final boolean DEFAULT_CHANGE_GATING = false;
+	private static final String CHANGE_TOLERANCE = "changeTolerance";
+	private static final int DEFAULT_CHANGE_TOLERANCE = 6;
+	private static final String CHANGE_MAX_SKIPS = "changeMaxSkips";
+	private static final int DEFAULT_CHANGE_MAX_SKIPS = 30;
+	
+	// log frames and results to disk while recording is set: frames per second to keep (0 for
+	// every frame), their jpeg quality, and the space the logs may take before the oldest go
+	private static final String RECORDING = "recording";
+	private static final boolean DEFAULT_RECORDING = false;
+	private static final String RECORD_FPS = "recordFps";
+	private static final int DEFAULT_RECORD_FPS = 10;
+	private static final String RECORD_QUALITY = "recordQuality";
+	private static final int DEFAULT_RECORD_QUALITY = 75;
+	private static final String RECORD_QUOTA_MB = "recordQuotaMb";
+	private static final int DEFAULT_RECORD_QUOTA_MB = 2048;
+	
+	// candidate checks: area in pixels, bounding box width over height, area over convex hull
+	// area, and the largest difference allowed between the Hu moments and the template's
+	private static final String MIN_TARGET_AREA = "minTargetArea";
+	private static final double DEFAULT_MIN_TARGET_AREA = 40;
+	private static final String MIN_ASPECT_RATIO = "minAspectRatio";
+	private static final double DEFAULT_MIN_ASPECT_RATIO = 1.0;
+	private static final String MAX_ASPECT_RATIO = "maxAspectRatio";
+	private static final double DEFAULT_MAX_ASPECT_RATIO = 4.0;
+	private static final String MIN_SOLIDITY = "minSolidity";
+	private static final double DEFAULT_MIN_SOLIDITY = 0.1;
+	private static final String MAX_SOLIDITY = "maxSolidity";
+	private static final double DEFAULT_MAX_SOLIDITY = 0.9;
+	private static final String MAX_SHAPE_DISTANCE = "maxShapeDistance";
+	private static final double DEFAULT_MAX_SHAPE_DISTANCE = 2.5;
+	
+	// per pipeline stage number arrays: p50, p99, max in milliseconds
+	private static final String LATENCY_PREFIX = "latency/";
+	
+	// processing loop rate as a number array: achieved fps, overruns, missed deadlines
+	private static final String PACING = "pacing";
+	
+	// how frames are thresholded: cvtColor plus inRange, or a colour lookup table
+	private static final String THRESHOLD_ENGINE = "thresholdEngine";
+	public static final int THRESHOLD_ENGINE_HLS = 0;
+	public static final int THRESHOLD_ENGINE_LUT = 1;
+	private static final int DEFAULT_THRESHOLD_ENGINE = THRESHOLD_ENGINE_HLS;
+	
+	// bands the HLS threshold is split into and run in parallel, 1 keeps it on the processing thread
+	private static final String THRESHOLD_THREADS = "thresholdThreads";
+	private static final int DEFAULT_THRESHOLD_THREADS = 1;
+	
+	// after a lock only search around the last target, until it is missed this many frames in a row
+	private static final String ROI_TRACKING = "roiTracking";
+	private static final boolean DEFAULT_ROI_TRACKING = true;
+	private static final String ROI_MAX_MISSES = "roiMaxMisses";
+	private static final int DEFAULT_ROI_MAX_MISSES = 5;
+	
+	// find the target on an image downscaled by this factor, then refine at full resolution; 1 is off
+	private static final String PYRAMID_SCALE = "pyramidScale";
+	private static final int DEFAULT_PYRAMID_SCALE = 1;
+	
+	// the stream governor lowers stream quality (down to streamMinQuality, up to quality) and stream
+	// fps (between streamMinFps and streamMaxFps) when a frame takes over frameBudgetMs, CPU use
+	// is over cpuBudget percent, or clients can't keep up with over backlogBudget percent of frames
+	private static final String STREAM_GOVERNOR = "streamGovernor";
+	private static final boolean DEFAULT_STREAM_GOVERNOR = true;
+	private static final String STREAM_MIN_QUALITY = "streamMinQuality";
+	private static final int DEFAULT_STREAM_MIN_QUALITY = 20;
+	private static final String STREAM_MIN_FPS = "streamMinFps";
+	private static final int DEFAULT_STREAM_MIN_FPS = 2;
+	private static final String STREAM_MAX_FPS = "streamMaxFps";
+	private static final int DEFAULT_STREAM_MAX_FPS = 15;
+	private static final String FRAME_BUDGET_MS = "frameBudgetMs";
+	private static final int DEFAULT_FRAME_BUDGET_MS = 100;
+	private static final String CPU_BUDGET = "cpuBudget";
+	private static final int DEFAULT_CPU_BUDGET = 85;
+	private static final String BACKLOG_BUDGET = "backlogBudget";
+	private static final int DEFAULT_BACKLOG_BUDGET = 25;
+	
+	// stream governor decisions as a number array: quality, stream fps, frame ms, cpu percent, backlog percent
+	private static final String STREAM = "stream";
+	
+	private static final String LEGACY_TARGET_KEYS = "legacyTargetKeys";
+	private static final boolean DEFAULT_LEGACY_TARGET_KEYS = true;
+	
+	// the keys that make up a VisionConfig snapshot
+	private static final Set<String> CONFIG_KEYS = new HashSet<>(Arrays.asList(
+			THRESHOLD_LOW_H, THRESHOLD_LOW_S, THRESHOLD_LOW_L, THRESHOLD_HIGH_H, THRESHOLD_HIGH_S, THRESHOLD_HIGH_L,
+			QUALITY, FPS, DISPLAY_MASK, BRIGHTNESS, ABSOLUTE_EXPOSURE, CAPTURE_NEXT_FRAME, LEGACY_TARGET_KEYS, THRESHOLD_ENGINE,
+			THRESHOLD_THREADS, ROI_TRACKING, ROI_MAX_MISSES, PYRAMID_SCALE,
+			STREAM_GOVERNOR, STREAM_MIN_QUALITY, STREAM_MIN_FPS, STREAM_MAX_FPS, FRAME_BUDGET_MS, CPU_BUDGET, BACKLOG_BUDGET,
+			TRACKER_MAX_MISSES, MAX_TARGETS, CHANGE_GATING, CHANGE_TOLERANCE, CHANGE_MAX_SKIPS,
+			RECORDING, RECORD_FPS, RECORD_QUALITY, RECORD_QUOTA_MB, MIN_TARGET_AREA, MIN_ASPECT_RATIO, MAX_ASPECT_RATIO, MIN_SOLIDITY, MAX_SOLIDITY, MAX_SHAPE_DISTANCE));
+	
+	private final ITable nt;
+	private volatile VisionConfig config;
+	private final ITableListener configListener = (table, key, value, isNew) -> {
+		if (CONFIG_KEYS.contains(key)) {
+			refreshConfig();
+		}
+	};
+	
+	private final double[] targetRecord = new double[TARGET_RECORD_LENGTH];
+	private final double[] trackRecord = new double[TRACK_RECORD_LENGTH];
+	private double[] targetsRecord = new double[TARGETS_HEADER_LENGTH];
+	private long targetsSequence;
+	private long targetSequence;
+	// a copy, as the caller reuses its result; only valid once a target has been published
+	private final TargetResult lastPublishedTarget = new TargetResult();
+	private boolean targetPublished;
 
 	public VisionNetworkTable() {
-		NetworkTable.setClientMode();
-		NetworkTable.setTeam(1294);
-		nt = NetworkTable.getTable("vision");
-		
+		this(createTable());
 		
 		// send version information
 		VersionInformation vi = new VersionInformation();
@@ -60,12 +197,140 @@ public class VisionNetworkTable {
 		nt.putString("author", vi.getAuthor());	
 	}
 	
+	/**
+	 * Use the given table instead of the robot's "vision" table, e.g. an in-memory
+	 * stand-in when there is no robot on the network.
+	 */
+	VisionNetworkTable(ITable table) {
+		nt = table;
+		refreshConfig();
+		nt.addTableListener(configListener, false);
+	}
+	
+	private static ITable createTable() {
+		NetworkTable.setClientMode();
+		NetworkTable.setTeam(1294);
+		return NetworkTable.getTable("vision");
+	}
+	
+	/**
+	 * @return snapshot of the tunable values, rebuilt whenever one of them changes
+	 */
+	public VisionConfig getConfig() {
+		return config;
+	}
+	
+	/**
+	 * Publish one frame's target as a single consistent record under "target", so the robot
+	 * never sees the x of one frame with the y of another. Results that match the last
+	 * published target are skipped until the heartbeat interval has passed. In legacy mode
+	 * the individual targetAcquired, targetX, targetY and lastUpdated keys are written too,
+	 * but only the ones whose values changed.
+	 */
+	public synchronized void publishTarget(TargetResult result) {
+		TargetResult last = targetPublished ? lastPublishedTarget : null;
+		boolean changed = !result.sameTarget(last);
+		if (!changed && result.getTimestamp() - last.getTimestamp() < TARGET_HEARTBEAT_MS) {
+			return;
+		}
+		
+		targetRecord[0] = ++targetSequence;
+		targetRecord[1] = result.isAcquired() ? 1 : 0;
+		targetRecord[2] = result.getX();
+		targetRecord[3] = result.getY();
+		targetRecord[4] = result.getTimestamp();
+		targetRecord[5] = result.getCaptureTimestamp();
+		targetRecord[6] = result.getLatencyMillis();
+		nt.putNumberArray(TARGET, targetRecord);
+		
+		if (config.isLegacyTargetKeys()) {
+			if (last == null || last.isAcquired() != result.isAcquired()) {
+				setTargetAcquired(result.isAcquired());
+			}
+			if (last == null || last.getX() != result.getX()) {
+				setTargetX(result.getX());
+			}
+			if (last == null || last.getY() != result.getY()) {
+				setTargetY(result.getY());
+			}
+			setLastUpdated(result.getTimestamp());
+		}
+		lastPublishedTarget.set(result);
+		targetPublished = true;
+	}
+	
+	/**
+	 * Publish the targets found in a frame as a single record under "targets", so the robot
+	 * never mixes the fields of two frames. The record is only reallocated when maxTargets
+	 * changes, so its length stays the same from frame to frame.
+	 */
+	public synchronized void publishTargets(TargetList targets) {
+		int count = targets.size();
+		int length = TARGETS_HEADER_LENGTH + Math.max(count, config.getMaxTargets()) * TARGETS_STRIDE;
+		if (targetsRecord.length != length) {
+			targetsRecord = new double[length];
+		}
+		double[] record = targetsRecord;
+		record[0] = ++targetsSequence;
+		record[1] = count;
+		int offset = TARGETS_HEADER_LENGTH;
+		for (int i = 0; i < count; i++, offset += TARGETS_STRIDE) {
+			record[offset] = targets.getX(i);
+			record[offset + 1] = targets.getY(i);
+			record[offset + 2] = targets.getLeft(i);
+			record[offset + 3] = targets.getTop(i);
+			record[offset + 4] = targets.getWidth(i);
+			record[offset + 5] = targets.getHeight(i);
+			record[offset + 6] = targets.getArea(i);
+			record[offset + 7] = targets.getScore(i);
+		}
+		Arrays.fill(record, offset, length, 0);
+		nt.putNumberArray(TARGETS, record);
+	}
+	
+	/**
+	 * Publish the tracker's estimate for the frame, every frame, so the robot can extrapolate
+	 * between them with the velocity.
+	 */
+	public synchronized void publishTrack(TrackedTarget track) {
+		trackRecord[0] = track.isTracking() ? 1 : 0;
+		trackRecord[1] = track.getX();
+		trackRecord[2] = track.getY();
+		trackRecord[3] = track.getVelocityX();
+		trackRecord[4] = track.getVelocityY();
+		trackRecord[5] = track.getConfidence();
+		trackRecord[6] = track.getFramesSinceSeen();
+		trackRecord[7] = track.getCaptureTimestamp();
+		nt.putNumberArray(TRACK, trackRecord);
+	}
+	
+	/**
+	 * Publish the frame time percentiles of one pipeline stage under latency/&lt;stage&gt;.
+	 */
+	public void publishStageLatency(String stage, double p50, double p99, double max) {
+		nt.putNumberArray(LATENCY_PREFIX + stage, new double[] { p50, p99, max });
+	}
+	
+	public void publishPacing(double achievedFps, long overruns, long missedDeadlines) {
+		nt.putNumberArray(PACING, new double[] { achievedFps, overruns, missedDeadlines });
+	}
+	
+	public void publishStreamGovernor(int quality, int streamFps, double frameMillis, double cpuPercent, double backlogPercent) {
+		nt.putNumberArray(STREAM, new double[] { quality, streamFps, frameMillis, cpuPercent, backlogPercent });
+	}
+	
+	// listener callbacks may not cover our own puts, so setters of config keys refresh too
+	private synchronized void refreshConfig() {
+		config = new VisionConfig(this);
+	}
+	
 	public int getThresholdLowH() {
 		return (int)nt.getNumber(THRESHOLD_LOW_H, DEFAULT_THRESHOLD_LOW_H);
 	}
 	
 	public void setThresholdLowH(double value) {
 		nt.putNumber(THRESHOLD_LOW_H, value);
+		refreshConfig();
 	}
 	
 	public int getThresholdLowS() {
@@ -74,6 +339,7 @@ public class VisionNetworkTable {
 	
 	public void setThresholdLowS(double value) {
 		nt.putNumber(THRESHOLD_LOW_S, value);
+		refreshConfig();
 	}
 	
 	public int getThresholdLowL() {
@@ -82,6 +348,7 @@ public class VisionNetworkTable {
 	
 	public void setThresholdLowL(double value) {
 		nt.putNumber(THRESHOLD_LOW_L, value);
+		refreshConfig();
 	}
 	
 	public int getThresholdHighH() {
@@ -90,6 +357,7 @@ public class VisionNetworkTable {
 	
 	public void setThresholdHighH(double value) {
 		nt.putNumber(THRESHOLD_HIGH_H, value);
+		refreshConfig();
 	}
 	
 	public int getThresholdHighS() {
@@ -98,6 +366,7 @@ public class VisionNetworkTable {
 	
 	public void setThresholdHighS(double value) {
 		nt.putNumber(THRESHOLD_HIGH_S, value);
+		refreshConfig();
 	}
 	
 	public int getThresholdHighL() {
@@ -106,6 +375,7 @@ public class VisionNetworkTable {
 	
 	public void setThresholdHighL(double value) {
 		nt.putNumber(THRESHOLD_HIGH_L, value);
+		refreshConfig();
 	}
 	
 	public int getQuality() {
@@ -154,6 +424,7 @@ public class VisionNetworkTable {
 	
 	public void setDisplayMask(boolean value) {
 		nt.putBoolean(DISPLAY_MASK, value);
+		refreshConfig();
 	}
 	
 	public int getBrightness() {
@@ -162,6 +433,7 @@ public class VisionNetworkTable {
 	
 	public void setBrightness(int value) {
 		nt.putNumber(BRIGHTNESS, value);
+		refreshConfig();
 	}
 	
 	public int getAbsoluteExposure() {
@@ -170,6 +442,7 @@ public class VisionNetworkTable {
 	
 	public void setAbsoluteExposure(int value) {
 		nt.putNumber(ABSOLUTE_EXPOSURE, value);
+		refreshConfig();
 	}
 	
 	public boolean isCaptureNextFrame() {
@@ -178,5 +451,258 @@ public class VisionNetworkTable {
 	
 	public void setCaptureNextFrame(boolean value) {
 		nt.putBoolean(CAPTURE_NEXT_FRAME, value);
+		refreshConfig();
+	}
+	
+	public boolean isLegacyTargetKeys() {
+		return nt.getBoolean(LEGACY_TARGET_KEYS, DEFAULT_LEGACY_TARGET_KEYS);
+	}
+	
+	public void setLegacyTargetKeys(boolean value) {
+		nt.putBoolean(LEGACY_TARGET_KEYS, value);
+		refreshConfig();
+	}
+	
+	public int getThresholdEngine() {
+		return (int)nt.getNumber(THRESHOLD_ENGINE, DEFAULT_THRESHOLD_ENGINE);
+	}
+	
+	public void setThresholdEngine(int value) {
+		nt.putNumber(THRESHOLD_ENGINE, value);
+		refreshConfig();
+	}
+	
+	public int getThresholdThreads() {
+		return (int)nt.getNumber(THRESHOLD_THREADS, DEFAULT_THRESHOLD_THREADS);
+	}
+	
+	public void setThresholdThreads(int value) {
+		nt.putNumber(THRESHOLD_THREADS, value);
+		refreshConfig();
+	}
+	
+	public boolean isRoiTracking() {
+		return nt.getBoolean(ROI_TRACKING, DEFAULT_ROI_TRACKING);
+	}
+	
+	public void setRoiTracking(boolean value) {
+		nt.putBoolean(ROI_TRACKING, value);
+		refreshConfig();
+	}
+	
+	public int getRoiMaxMisses() {
+		return (int)nt.getNumber(ROI_MAX_MISSES, DEFAULT_ROI_MAX_MISSES);
+	}
+	
+	public void setRoiMaxMisses(int value) {
+		nt.putNumber(ROI_MAX_MISSES, value);
+		refreshConfig();
+	}
+	
+	public int getPyramidScale() {
+		return (int)nt.getNumber(PYRAMID_SCALE, DEFAULT_PYRAMID_SCALE);
+	}
+	
+	public void setPyramidScale(int value) {
+		nt.putNumber(PYRAMID_SCALE, value);
+		refreshConfig();
+	}
+	
+	public boolean isStreamGovernor() {
+		return nt.getBoolean(STREAM_GOVERNOR, DEFAULT_STREAM_GOVERNOR);
+	}
+	
+	public void setStreamGovernor(boolean value) {
+		nt.putBoolean(STREAM_GOVERNOR, value);
+		refreshConfig();
+	}
+	
+	public int getStreamMinQuality() {
+		return (int)nt.getNumber(STREAM_MIN_QUALITY, DEFAULT_STREAM_MIN_QUALITY);
+	}
+	
+	public void setStreamMinQuality(int value) {
+		nt.putNumber(STREAM_MIN_QUALITY, value);
+		refreshConfig();
+	}
+	
+	public int getStreamMinFps() {
+		return (int)nt.getNumber(STREAM_MIN_FPS, DEFAULT_STREAM_MIN_FPS);
+	}
+	
+	public void setStreamMinFps(int value) {
+		nt.putNumber(STREAM_MIN_FPS, value);
+		refreshConfig();
+	}
+	
+	public int getStreamMaxFps() {
+		return (int)nt.getNumber(STREAM_MAX_FPS, DEFAULT_STREAM_MAX_FPS);
+	}
+	
+	public void setStreamMaxFps(int value) {
+		nt.putNumber(STREAM_MAX_FPS, value);
+		refreshConfig();
+	}
+	
+	public int getFrameBudgetMs() {
+		return (int)nt.getNumber(FRAME_BUDGET_MS, DEFAULT_FRAME_BUDGET_MS);
+	}
+	
+	public void setFrameBudgetMs(int value) {
+		nt.putNumber(FRAME_BUDGET_MS, value);
+		refreshConfig();
+	}
+	
+	public int getCpuBudget() {
+		return (int)nt.getNumber(CPU_BUDGET, DEFAULT_CPU_BUDGET);
+	}
+	
+	public void setCpuBudget(int value) {
+		nt.putNumber(CPU_BUDGET, value);
+		refreshConfig();
+	}
+	
+	public int getBacklogBudget() {
+		return (int)nt.getNumber(BACKLOG_BUDGET, DEFAULT_BACKLOG_BUDGET);
+	}
+	
+	public void setBacklogBudget(int value) {
+		nt.putNumber(BACKLOG_BUDGET, value);
+		refreshConfig();
+	}
+	
+	public int getTrackerMaxMisses() {
+		return (int)nt.getNumber(TRACKER_MAX_MISSES, DEFAULT_TRACKER_MAX_MISSES);
+	}
+	
+	public void setTrackerMaxMisses(int value) {
+		nt.putNumber(TRACKER_MAX_MISSES, value);
+		refreshConfig();
+	}
+	
+	public double getMinTargetArea() {
+		return nt.getNumber(MIN_TARGET_AREA, DEFAULT_MIN_TARGET_AREA);
+	}
+	
+	public void setMinTargetArea(double value) {
+		nt.putNumber(MIN_TARGET_AREA, value);
+		refreshConfig();
+	}
+	
+	public double getMinAspectRatio() {
+		return nt.getNumber(MIN_ASPECT_RATIO, DEFAULT_MIN_ASPECT_RATIO);
+	}
+	
+	public void setMinAspectRatio(double value) {
+		nt.putNumber(MIN_ASPECT_RATIO, value);
+		refreshConfig();
+	}
+	
+	public double getMaxAspectRatio() {
+		return nt.getNumber(MAX_ASPECT_RATIO, DEFAULT_MAX_ASPECT_RATIO);
+	}
+	
+	public void setMaxAspectRatio(double value) {
+		nt.putNumber(MAX_ASPECT_RATIO, value);
+		refreshConfig();
+	}
+	
+	public double getMinSolidity() {
+		return nt.getNumber(MIN_SOLIDITY, DEFAULT_MIN_SOLIDITY);
+	}
+	
+	public void setMinSolidity(double value) {
+		nt.putNumber(MIN_SOLIDITY, value);
+		refreshConfig();
+	}
+	
+	public double getMaxSolidity() {
+		return nt.getNumber(MAX_SOLIDITY, DEFAULT_MAX_SOLIDITY);
+	}
+	
+	public void setMaxSolidity(double value) {
+		nt.putNumber(MAX_SOLIDITY, value);
+		refreshConfig();
+	}
+	
+	public double getMaxShapeDistance() {
+		return nt.getNumber(MAX_SHAPE_DISTANCE, DEFAULT_MAX_SHAPE_DISTANCE);
+	}
+	
+	public void setMaxShapeDistance(double value) {
+		nt.putNumber(MAX_SHAPE_DISTANCE, value);
+		refreshConfig();
+	}
+	
+	public int getMaxTargets() {
+		return (int)nt.getNumber(MAX_TARGETS, DEFAULT_MAX_TARGETS);
+	}
+	
+	public void setMaxTargets(int value) {
+		nt.putNumber(MAX_TARGETS, value);
+		refreshConfig();
+	}
+	
+	public boolean isChangeGating() {
+		return nt.getBoolean(CHANGE_GATING, DEFAULT_CHANGE_GATING);
+	}
+	
+	public void setChangeGating(boolean value) {
+		nt.putBoolean(CHANGE_GATING, value);
+		refreshConfig();
+	}
+	
+	public int getChangeTolerance() {
+		return (int)nt.getNumber(CHANGE_TOLERANCE, DEFAULT_CHANGE_TOLERANCE);
+	}
+	
+	public void setChangeTolerance(int value) {
+		nt.putNumber(CHANGE_TOLERANCE, value);
+		refreshConfig();
+	}
+	
+	public int getChangeMaxSkips() {
+		return (int)nt.getNumber(CHANGE_MAX_SKIPS, DEFAULT_CHANGE_MAX_SKIPS);
+	}
+	
+	public void setChangeMaxSkips(int value) {
+		nt.putNumber(CHANGE_MAX_SKIPS, value);
+		refreshConfig();
+	}
+	
+	public boolean isRecording() {
+		return nt.getBoolean(RECORDING, DEFAULT_RECORDING);
+	}
+	
+	public void setRecording(boolean value) {
+		nt.putBoolean(RECORDING, value);
+		refreshConfig();
+	}
+	
+	public int getRecordFps() {
+		return (int)nt.getNumber(RECORD_FPS, DEFAULT_RECORD_FPS);
+	}
+	
+	public void setRecordFps(int value) {
+		nt.putNumber(RECORD_FPS, value);
+		refreshConfig();
+	}
+	
+	public int getRecordQuality() {
+		return (int)nt.getNumber(RECORD_QUALITY, DEFAULT_RECORD_QUALITY);
+	}
+	
+	public void setRecordQuality(int value) {
+		nt.putNumber(RECORD_QUALITY, value);
+		refreshConfig();
+	}
+	
+	public int getRecordQuotaMb() {
+		return (int)nt.getNumber(RECORD_QUOTA_MB, DEFAULT_RECORD_QUOTA_MB);
+	}
+	
+	public void setRecordQuotaMb(int value) {
+		nt.putNumber(RECORD_QUOTA_MB, value);
+		refreshConfig();
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class CameraControlServiceTest {
+
+	private final FakeBackend backend = new FakeBackend();
+	private final CameraControlService service = new CameraControlService(backend);
+
+	@Test
+	public void changesBeforeTheyAreAppliedCollapseIntoOne() {
+		service.set(CameraControlService.BRIGHTNESS, 100);
+		service.set(CameraControlService.BRIGHTNESS, 150);
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		service.set(CameraControlService.EXPOSURE_ABSOLUTE, 20);
+		service.applyPending();
+		assertEquals(2, backend.calls.size());
+		assertEquals("brightness=200", backend.calls.get(0));
+		assertEquals("exposure_absolute=20", backend.calls.get(1));
+	}
+
+	@Test
+	public void anUnchangedValueIsNotAppliedAgain() {
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		service.applyPending();
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		service.applyPending();
+		assertEquals(1, backend.calls.size());
+	}
+
+	@Test
+	public void theAppliedTimeIsRecorded() {
+		long before = System.currentTimeMillis();
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		assertNull(service.getApplied(CameraControlService.BRIGHTNESS));
+		service.applyPending();
+		long after = System.currentTimeMillis();
+
+		CameraControlService.AppliedControl applied = service.getApplied(CameraControlService.BRIGHTNESS);
+		assertEquals(200, applied.getValue());
+		assertTrue(applied.getRequestedAt() >= before);
+		assertTrue(applied.getAppliedAt() >= applied.getRequestedAt());
+		assertTrue(applied.getAppliedAt() <= after);
+	}
+
+	@Test
+	public void aFailedSetIsRetriedWhenRequestedAgain() {
+		backend.failures = 1;
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		service.applyPending();
+		assertNull(service.getApplied(CameraControlService.BRIGHTNESS));
+
+		// the processing loop asks for the same value on the next frame
+		service.set(CameraControlService.BRIGHTNESS, 200);
+		service.applyPending();
+		assertEquals(2, backend.calls.size());
+		assertEquals(200, service.getApplied(CameraControlService.BRIGHTNESS).getValue());
+	}
+
+	private static class FakeBackend implements CameraControlBackend {
+
+		final List<String> calls = new ArrayList<>();
+		int failures;
+
+		@Override
+		public void set(String control, int value) throws IOException {
+			calls.add(control + "=" + value);
+			if (failures > 0) {
+				failures--;
+				throw new IOException("device busy");
+			}
+		}
+	}
+}
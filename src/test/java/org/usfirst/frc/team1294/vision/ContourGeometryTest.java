@@ -0,0 +1,132 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ContourGeometryTest {
+
+	@Test
+	public void upperCornersFirstWinsATie() {
+		// bounding rect 0..4 wide from top 0: (1,0) and (0,1) tie for the upper left,
+		// (3,0) and (4,1) tie for the upper right
+		int[] points = { 1, 0, 0, 1, 4, 1, 3, 0, 2, 4 };
+		int[] corners = new int[4];
+		ContourGeometry.findUpperCorners(points, 5, 0, 4, 0, corners);
+		assertArrayEquals(new int[] { 1, 0, 4, 1 }, corners);
+	}
+
+	@Test
+	public void singlePointIsBothCorners() {
+		int[] corners = new int[4];
+		ContourGeometry.findUpperCorners(new int[] { 7, 9 }, 1, 7, 8, 9, corners);
+		assertArrayEquals(new int[] { 7, 9, 7, 9 }, corners);
+	}
+
+	@Test
+	public void upperCornersOfATarget() {
+		// a U with its arms up, bounding rect x 10..40, y 20..50
+		int[] points = { 10, 20, 10, 50, 40, 50, 40, 20, 35, 20, 35, 45, 15, 45, 15, 20 };
+		int[] corners = new int[4];
+		ContourGeometry.findUpperCorners(points, 8, 10, 40, 20, corners);
+		assertArrayEquals(new int[] { 10, 20, 40, 20 }, corners);
+	}
+
+	@Test
+	public void matchesTheOldDoubleSearchAndMidpoint() {
+		Random random = new Random(1294);
+		int[] corners = new int[4];
+		for (int trial = 0; trial < 2000; trial++) {
+			// small coordinates so there are plenty of ties
+			int count = 1 + random.nextInt(20);
+			int[] points = new int[count * 2];
+			int left = Integer.MAX_VALUE;
+			int right = Integer.MIN_VALUE;
+			int top = Integer.MAX_VALUE;
+			for (int i = 0; i < count; i++) {
+				points[2 * i] = random.nextInt(12);
+				points[2 * i + 1] = random.nextInt(12);
+				left = Math.min(left, points[2 * i]);
+				right = Math.max(right, points[2 * i]);
+				top = Math.min(top, points[2 * i + 1]);
+			}
+			// boundingRect's width is one more than right - left
+			right++;
+
+			ContourGeometry.findUpperCorners(points, count, left, right, top, corners);
+			double[][] expected = oldUpperCorners(points, count, left, right, top);
+			assertEquals(expected[0][0], corners[0], 0);
+			assertEquals(expected[0][1], corners[1], 0);
+			assertEquals(expected[1][0], corners[2], 0);
+			assertEquals(expected[1][1], corners[3], 0);
+
+			// the published target is the midpoint cast to int, odd sums included
+			double oldMidX = (expected[0][0] + expected[1][0]) / 2;
+			double oldMidY = (expected[0][1] + expected[1][1]) / 2;
+			assertEquals((int) oldMidX, (int) ((corners[0] + corners[2]) / 2.0));
+			assertEquals((int) oldMidY, (int) ((corners[1] + corners[3]) / 2.0));
+		}
+	}
+
+	@Test
+	public void polygonAreaOfASquare() {
+		int[] points = { 0, 0, 10, 0, 10, 10, 0, 10 };
+		assertEquals(100, ContourGeometry.polygonArea(points, 4, new int[] { 0, 1, 2, 3 }, 4), 0);
+		// either winding
+		assertEquals(100, ContourGeometry.polygonArea(points, 4, new int[] { 3, 2, 1, 0 }, 4), 0);
+	}
+
+	@Test
+	public void polygonAreaOfASubsetOfPoints() {
+		// the triangle on points 0, 2 and 4 of a hexagon-ish contour
+		int[] points = { 0, 0, 5, 1, 10, 0, 9, 5, 0, 10 };
+		assertEquals(50, ContourGeometry.polygonArea(points, 5, new int[] { 0, 2, 4 }, 3), 0);
+	}
+
+	@Test
+	public void polygonAreaOfFewerThanThreeVerticesIsZero() {
+		int[] points = { 0, 0, 10, 10 };
+		assertEquals(0, ContourGeometry.polygonArea(points, 2, new int[] { 0, 1 }, 2), 0);
+		assertEquals(0, ContourGeometry.polygonArea(points, 2, new int[] { 0 }, 1), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void polygonAreaRejectsIndexesPastTheCount() {
+		ContourGeometry.polygonArea(new int[] { 0, 0, 1, 0, 1, 1 }, 2, new int[] { 0, 1, 2 }, 3);
+	}
+
+	/**
+	 * The search ImageProcessor did before ContourGeometry, on double[] points with Math.sqrt.
+	 */
+	private static double[][] oldUpperCorners(int[] points, int count, int left, int right, int top) {
+		double[] rectUpperLeft = { left, top };
+		double[] rectUpperRight = { right, top };
+		double[] upperLeft = null;
+		double[] upperRight = null;
+		double minDistanceUpperLeft = Double.MAX_VALUE;
+		double minDistanceUpperRight = Double.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			double[] p = { points[2 * i], points[2 * i + 1] };
+			double dUpperLeft = distance(p, rectUpperLeft);
+			if (dUpperLeft < minDistanceUpperLeft) {
+				minDistanceUpperLeft = dUpperLeft;
+				upperLeft = p;
+			}
+			double dUpperRight = distance(p, rectUpperRight);
+			if (dUpperRight < minDistanceUpperRight) {
+				minDistanceUpperRight = dUpperRight;
+				upperRight = p;
+			}
+		}
+		return new double[][] { upperLeft, upperRight };
+	}
+
+	private static double distance(double[] p1, double[] p2) {
+		double dx = Math.abs(p1[0] - p2[0]);
+		double dy = Math.abs(p1[1] - p2[1]);
+		return Math.sqrt(Math.pow(dx, 2) + Math.pow(dy, 2));
+	}
+}
@@ -0,0 +1,171 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FrameLogTest {
+
+	private static final int FRAMES = 5;
+	// capture times in each log start here and go up 100 ms a frame
+	private static final long FIRST_LOG_TIME = 10_000;
+	private static final long SECOND_LOG_TIME = 20_000;
+
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = Files.createTempDirectory("frame-log-test").toFile();
+	}
+
+	@After
+	public void deleteDirectory() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	/**
+	 * Write a log whose frame i has a jpeg of 10 + i bytes, all equal to i, found at (i, 2i)
+	 * if i is even.
+	 */
+	private File writeLog(String name, long firstCaptureTime) throws IOException {
+		File file = new File(directory, name + FrameLog.EXTENSION);
+		FrameLogWriter writer = new FrameLogWriter(file, 320, 240);
+		byte[] jpeg = new byte[64];
+		for (int i = 0; i < FRAMES; i++) {
+			java.util.Arrays.fill(jpeg, (byte) i);
+			long captureTime = firstCaptureTime + 100 * i;
+			writer.append(i + 1, new TargetResult(i % 2 == 0, i, 2 * i, captureTime + 7, captureTime, 1.5 * i),
+					jpeg, 10 + i);
+		}
+		assertEquals(FRAMES, writer.getFrameCount());
+		writer.close();
+		return file;
+	}
+
+	private static void truncate(File file, long bytes) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - bytes);
+		}
+	}
+
+	private static void assertRecords(FrameLogReader reader, int count, long firstCaptureTime) {
+		assertEquals(320, reader.getWidth());
+		assertEquals(240, reader.getHeight());
+		assertEquals(count, reader.getFrameCount());
+		for (int i = 0; i < count; i++) {
+			long captureTime = firstCaptureTime + 100 * i;
+			assertEquals(i + 1, reader.getSequence(i));
+			assertEquals(captureTime, reader.getCaptureTime(i));
+
+			TargetResult result = reader.getResult(i);
+			assertEquals(i % 2 == 0, result.isAcquired());
+			assertEquals(i, result.getX());
+			assertEquals(2 * i, result.getY());
+			assertEquals(captureTime + 7, result.getTimestamp());
+			assertEquals(captureTime, result.getCaptureTimestamp());
+			assertEquals(1.5 * i, result.getLatencyMillis(), 0);
+
+			ByteBuffer jpeg = reader.getJpeg(i);
+			assertEquals(10 + i, jpeg.remaining());
+			while (jpeg.hasRemaining()) {
+				assertEquals(i, jpeg.get());
+			}
+		}
+	}
+
+	@Test
+	public void readsBackThroughTheIndex() throws IOException {
+		FrameLogReader reader = new FrameLogReader(writeLog("clean", FIRST_LOG_TIME));
+		assertTrue(reader.isIndexed());
+		assertRecords(reader, FRAMES, FIRST_LOG_TIME);
+	}
+
+	@Test
+	public void scansTheRecordsWithoutTheIndex() throws IOException {
+		File file = writeLog("unclean", FIRST_LOG_TIME);
+		// as if the power went before close() wrote the index and footer
+		truncate(file, FRAMES * FrameLog.INDEX_ENTRY_BYTES + FrameLog.FOOTER_BYTES);
+		FrameLogReader reader = new FrameLogReader(file);
+		assertFalse(reader.isIndexed());
+		assertRecords(reader, FRAMES, FIRST_LOG_TIME);
+	}
+
+	@Test
+	public void aScanStopsAtAPartlyWrittenRecord() throws IOException {
+		File file = writeLog("cut", FIRST_LOG_TIME);
+		// and part of the last record's jpeg with it
+		truncate(file, FRAMES * FrameLog.INDEX_ENTRY_BYTES + FrameLog.FOOTER_BYTES + 3);
+		FrameLogReader reader = new FrameLogReader(file);
+		assertFalse(reader.isIndexed());
+		assertRecords(reader, FRAMES - 1, FIRST_LOG_TIME);
+	}
+
+	@Test
+	public void findsFramesByCaptureTime() throws IOException {
+		FrameLogReader reader = new FrameLogReader(writeLog("times", FIRST_LOG_TIME));
+		assertEquals(0, reader.findFrame(0));
+		assertEquals(0, reader.findFrame(FIRST_LOG_TIME));
+		assertEquals(1, reader.findFrame(FIRST_LOG_TIME + 1));
+		assertEquals(2, reader.findFrame(FIRST_LOG_TIME + 200));
+		assertEquals(FRAMES, reader.findFrame(FIRST_LOG_TIME + 100 * FRAMES));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void readingAfterCloseFailsClearly() throws IOException {
+		FrameLogReader reader = new FrameLogReader(writeLog("closed", FIRST_LOG_TIME));
+		reader.close();
+		// the index stays readable
+		assertEquals(FIRST_LOG_TIME, reader.getCaptureTime(0));
+		reader.getResult(0);
+	}
+
+	@Test
+	public void seeksByFrameAcrossLogs() throws IOException {
+		writeLog("match-000", FIRST_LOG_TIME);
+		writeLog("match-001", SECOND_LOG_TIME);
+		FrameLogFrameSource source = new FrameLogFrameSource(directory);
+		assertEquals(2 * FRAMES, source.getFrameCount());
+		assertEquals(0, source.getFrameNumber());
+
+		source.setFrameRange(3, 7);
+		assertEquals(3, source.getFrameNumber());
+		// the first frame of the second log
+		source.setFrameRange(FRAMES, 7);
+		assertEquals(FRAMES, source.getFrameNumber());
+		source.setFrameRange(FRAMES + 2, 7);
+		assertEquals(FRAMES + 2, source.getFrameNumber());
+		source.close();
+	}
+
+	@Test
+	public void seeksByTimeAcrossLogs() throws IOException {
+		writeLog("match-000", FIRST_LOG_TIME);
+		writeLog("match-001", SECOND_LOG_TIME);
+		FrameLogFrameSource source = new FrameLogFrameSource(directory);
+
+		source.setTimeRange(FIRST_LOG_TIME + 150, Long.MAX_VALUE);
+		assertEquals(2, source.getFrameNumber());
+		// between the two logs, so the first frame of the second
+		source.setTimeRange(FIRST_LOG_TIME + 5_000, Long.MAX_VALUE);
+		assertEquals(FRAMES, source.getFrameNumber());
+		source.setTimeRange(SECOND_LOG_TIME + 300, Long.MAX_VALUE);
+		assertEquals(FRAMES + 3, source.getFrameNumber());
+		// after everything
+		source.setTimeRange(SECOND_LOG_TIME + 5_000, Long.MAX_VALUE);
+		assertEquals(2 * FRAMES, source.getFrameNumber());
+		source.close();
+	}
+}
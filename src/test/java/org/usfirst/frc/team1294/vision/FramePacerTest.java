@@ -0,0 +1,106 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class FramePacerTest {
+
+	private long now = TimeUnit.SECONDS.toNanos(100);
+	private final FramePacer pacer = new FramePacer(() -> now);
+
+	private static long ms(long millis) {
+		return TimeUnit.MILLISECONDS.toNanos(millis);
+	}
+
+	/**
+	 * Wait the returned delay, then spend the given time on the next frame.
+	 */
+	private long waitAndProcess(long delay, long frameMillis) {
+		now += delay + ms(frameMillis);
+		return pacer.frameDone(10);
+	}
+
+	@Test
+	public void firstFrameWaitsOnePeriod() {
+		assertEquals(ms(100), pacer.frameDone(10));
+		assertEquals(1, pacer.getFrames());
+		assertEquals(0, pacer.getOverruns());
+	}
+
+	@Test
+	public void steadyRateWaitsOutTheRestOfEachPeriod() {
+		long delay = pacer.frameDone(10);
+		for (int i = 0; i < 50; i++) {
+			delay = waitAndProcess(delay, 30);
+			assertEquals(ms(70), delay);
+		}
+		assertEquals(51, pacer.getFrames());
+		assertEquals(0, pacer.getOverruns());
+		assertEquals(0, pacer.getMissedDeadlines());
+	}
+
+	@Test
+	public void scheduleDoesNotDriftWithFrameTime() {
+		long start = now;
+		long delay = pacer.frameDone(10);
+		// uneven frame times, all inside the period
+		long[] frameMillis = { 10, 90, 40, 0, 75, 20 };
+		for (long frame : frameMillis) {
+			delay = waitAndProcess(delay, frame);
+		}
+		// the next frame starts exactly seven periods after the first one finished
+		assertEquals(start + ms(700), now + delay);
+	}
+
+	@Test
+	public void overrunSkipsMissedDeadlines() {
+		long delay = pacer.frameDone(10);
+		// 250 ms against a 100 ms period runs past two deadlines
+		delay = waitAndProcess(delay, 250);
+		assertEquals(0, delay);
+		assertEquals(1, pacer.getOverruns());
+		assertEquals(2, pacer.getMissedDeadlines());
+
+		// the schedule restarts from the end of the overrun rather than catching up
+		delay = waitAndProcess(delay, 30);
+		assertEquals(ms(70), delay);
+		assertEquals(1, pacer.getOverruns());
+		assertEquals(2, pacer.getMissedDeadlines());
+	}
+
+	@Test
+	public void frameJustPastTheDeadlineMissesOne() {
+		long delay = pacer.frameDone(10);
+		now += delay + ms(101);
+		assertEquals(0, pacer.frameDone(10));
+		assertEquals(1, pacer.getOverruns());
+		assertEquals(1, pacer.getMissedDeadlines());
+	}
+
+	@Test
+	public void fpsChangeStartsANewSchedule() {
+		long delay = pacer.frameDone(10);
+		now += delay + ms(10);
+		// 20 fps from this frame on, with no overrun from the change itself
+		assertEquals(ms(50), pacer.frameDone(20));
+		now += ms(50) + ms(10);
+		assertEquals(ms(40), pacer.frameDone(20));
+		assertEquals(0, pacer.getOverruns());
+	}
+
+	@Test
+	public void zeroOrNegativeFpsRunsBackToBack() {
+		assertEquals(0, pacer.frameDone(0));
+		now += ms(500);
+		assertEquals(0, pacer.frameDone(-5));
+		assertEquals(0, pacer.getOverruns());
+		assertEquals(0, pacer.getMissedDeadlines());
+		// and a rate again starts a fresh schedule
+		now += ms(500);
+		assertEquals(ms(100), pacer.frameDone(10));
+		assertEquals(0, pacer.getOverruns());
+	}
+}
@@ -0,0 +1,77 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.wpi.first.wpilibj.tables.ITable;
+
+public class InMemoryTableTest {
+
+	@Test
+	public void systemPropertiesSetTheStartingValues() {
+		System.setProperty("vision.thresholdLowH", "60");
+		System.setProperty("vision.roiTracking", "false");
+		try {
+			VisionConfig config = InMemoryTable.fromSystemProperties().getConfig();
+			assertEquals(60, config.getThresholdLowH());
+			assertFalse(config.isRoiTracking());
+		} finally {
+			System.clearProperty("vision.thresholdLowH");
+			System.clearProperty("vision.roiTracking");
+		}
+	}
+
+	@Test
+	public void publishingStaysInTheTable() {
+		VisionNetworkTable table = InMemoryTable.create();
+		table.setThresholdHighH(99);
+		assertEquals(99, table.getConfig().getThresholdHighH());
+	}
+
+	@Test
+	public void anotherWriterReplacesTheConfigSnapshot() {
+		ITable table = InMemoryTable.createTable();
+		VisionNetworkTable visionTable = new VisionNetworkTable(table);
+		VisionConfig before = visionTable.getConfig();
+
+		// as the dashboard would, straight to the table rather than through a setter
+		table.putNumber("thresholdLowH", 42);
+		VisionConfig after = visionTable.getConfig();
+		assertNotSame(before, after);
+		assertEquals(42, after.getThresholdLowH());
+
+		// a value that isn't configuration leaves the snapshot alone
+		table.putNumber("someOtherKey", 1);
+		assertSame(after, visionTable.getConfig());
+	}
+
+	@Test
+	public void keyedListenersOnlyHearTheirKey() {
+		ITable table = InMemoryTable.createTable();
+		List<String> heard = new ArrayList<>();
+		table.addTableListener("fps", (source, key, value, isNew) -> heard.add(key + "=" + value), false);
+		table.putNumber("fps", 15);
+		table.putNumber("brightness", 100);
+		// unchanged values aren't reported again
+		table.putNumber("fps", 15);
+		assertEquals(1, heard.size());
+		assertEquals("fps=15.0", heard.get(0));
+	}
+
+	@Test
+	public void unsupportedCallsReturnZeroRatherThanNull() {
+		ITable table = InMemoryTable.createTable();
+		table.putNumber("fps", 15);
+		assertEquals(0, table.getFlags("fps"));
+		assertEquals(15.0, table.getNumber("fps"), 0);
+		assertEquals(0.0, table.getNumber("missing"), 0);
+		assertFalse(table.isPersistent("fps"));
+	}
+}
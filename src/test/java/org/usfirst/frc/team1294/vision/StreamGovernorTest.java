@@ -0,0 +1,43 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StreamGovernorTest {
+
+	private final VisionNetworkTable table = InMemoryTable.create();
+	private final StreamGovernor governor = new StreamGovernor(null);
+
+	@Test
+	public void zeroMaxFpsStillStreamsAtOneFps() {
+		table.setStreamMaxFps(0);
+		assertTrue(governor.shouldStream(table.getConfig()));
+		assertEquals(1, governor.getStreamFps());
+		// the next frame comes well inside the one second period
+		assertFalse(governor.shouldStream(table.getConfig()));
+	}
+
+	@Test
+	public void switchingBackOnDecidesAfresh() {
+		assertTrue(governor.shouldStream(table.getConfig()));
+		table.setStreamGovernor(false);
+		assertTrue(governor.shouldStream(table.getConfig()));
+		assertEquals(0, governor.getStreamFps());
+		// back on within a second of the last evaluation
+		table.setStreamGovernor(true);
+		governor.shouldStream(table.getConfig());
+		assertTrue(governor.getStreamFps() >= 1);
+	}
+
+	@Test
+	public void offStreamsEveryFrameAtTheConfiguredQuality() {
+		table.setStreamGovernor(false);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(governor.shouldStream(table.getConfig()));
+		}
+		assertEquals(table.getConfig().getQuality(), governor.getQuality());
+	}
+}
@@ -0,0 +1,92 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TargetTrackerTest {
+
+	private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+	private static final int MAX_MISSES = 2;
+
+	private final TargetTracker tracker = new TargetTracker();
+	private final TargetResult result = new TargetResult();
+	private long captureNanos = TimeUnit.SECONDS.toNanos(100);
+
+	private TrackedTarget frame(boolean acquired, int x, int y) {
+		captureNanos += FRAME_NANOS;
+		result.set(acquired, x, y, 0, 0, 0);
+		return tracker.update(result, captureNanos, MAX_MISSES);
+	}
+
+	@Test
+	public void firstSightingStartsAtTheMeasurement() {
+		assertFalse(frame(false, 0, 0).isTracking());
+		TrackedTarget track = frame(true, 120, 80);
+		assertTrue(track.isTracking());
+		assertEquals(120, track.getX(), 0);
+		assertEquals(80, track.getY(), 0);
+		assertEquals(0, track.getVelocityX(), 0);
+	}
+
+	@Test
+	public void velocityFollowsSteadyMotion() {
+		TrackedTarget track = null;
+		// 5 px per 50 ms frame is 100 px/s
+		for (int i = 0; i < 40; i++) {
+			track = frame(true, 100 + 5 * i, 80);
+		}
+		assertEquals(100, track.getVelocityX(), 5);
+		assertEquals(0, track.getVelocityY(), 5);
+	}
+
+	@Test
+	public void predictsThroughMissesThenDrops() {
+		for (int i = 0; i < 20; i++) {
+			frame(true, 100 + 5 * i, 80);
+		}
+		TrackedTarget track = frame(false, 0, 0);
+		assertTrue(track.isTracking());
+		assertEquals(1, track.getFramesSinceSeen());
+		// still moving on at about 100 px/s from x = 195
+		assertEquals(200, track.getX(), 2);
+		assertTrue(frame(false, 0, 0).isTracking());
+		assertSame(TrackedTarget.none(), frame(false, 0, 0));
+	}
+
+	@Test
+	public void aGapStartsANewTrack() {
+		for (int i = 0; i < 20; i++) {
+			frame(true, 100 + 5 * i, 80);
+		}
+		captureNanos += TimeUnit.SECONDS.toNanos(2);
+		TrackedTarget track = frame(true, 300, 90);
+		assertEquals(300, track.getX(), 0);
+		assertEquals(0, track.getVelocityX(), 0);
+	}
+
+	@Test
+	public void steadyStateDoesNotAllocate() {
+		AllocationCounter counter = new AllocationCounter();
+		if (!counter.isSupported()) {
+			return;
+		}
+		// as the processing loop does: refill the result, update the tracker, read the estimate
+		double sum = 0;
+		for (int i = 0; i < 20000; i++) {
+			sum += frame(i % 7 != 0, 100 + i % 50, 80).getX();
+		}
+		counter.begin();
+		for (int i = 0; i < 1000; i++) {
+			sum += frame(i % 7 != 0, 100 + i % 50, 80).getX();
+		}
+		counter.end();
+		assertTrue(sum > 0);
+		assertEquals(0, counter.getLastAllocatedBytes());
+	}
+}
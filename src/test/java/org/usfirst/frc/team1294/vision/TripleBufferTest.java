@@ -0,0 +1,138 @@
+package org.usfirst.frc.team1294.vision;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * The frame handoff behind {@link FrameGrabber}, with int[] slots standing in for Mats and
+ * the test acting as a synthetic frame source.
+ */
+public class TripleBufferTest {
+
+	private final TripleBuffer<long[]> buffer = new TripleBuffer<>(() -> new long[1]);
+
+	/**
+	 * Fill the back slot with the frame number and publish it, as the capture thread does.
+	 */
+	private void capture(long frame) {
+		buffer.back()[0] = frame;
+		buffer.publish(frame * 10);
+	}
+
+	@Test
+	public void nothingToTakeBeforeTheFirstFrame() {
+		assertNull(buffer.take());
+		assertEquals(0, buffer.getSequence());
+		assertEquals(0, buffer.getSkippedItems());
+	}
+
+	@Test
+	public void freshFrameIsTakenOnlyOnce() {
+		capture(1);
+		long[] frame = buffer.take();
+		assertEquals(1, frame[0]);
+		assertEquals(1, buffer.getSequence());
+		assertEquals(10, buffer.getTimestamp());
+		// the FRESH bit was cleared by the take
+		assertNull(buffer.take());
+	}
+
+	@Test
+	public void staleFramesAreSkipped() {
+		capture(1);
+		buffer.take();
+		capture(2);
+		capture(3);
+		capture(4);
+		long[] frame = buffer.take();
+		assertEquals(4, frame[0]);
+		assertEquals(4, buffer.getSequence());
+		assertEquals(40, buffer.getTimestamp());
+		assertEquals(2, buffer.getSkippedItems());
+		assertEquals(4, buffer.getPublishedItems());
+	}
+
+	@Test
+	public void framesSkippedBeforeTheFirstTakeAreNotCounted() {
+		capture(1);
+		capture(2);
+		buffer.take();
+		assertEquals(2, buffer.getSequence());
+		assertEquals(0, buffer.getSkippedItems());
+	}
+
+	@Test
+	public void takenSlotIsNeverHandedBackToTheProducer() {
+		capture(1);
+		long[] taken = buffer.take();
+		// the producer keeps overwriting the other two slots until the next take
+		for (int i = 2; i < 10; i++) {
+			assertNotSame(taken, buffer.back());
+			capture(i);
+			assertEquals(1, taken[0]);
+		}
+		long[] next = buffer.take();
+		assertEquals(9, next[0]);
+		assertNotSame(taken, next);
+	}
+
+	@Test
+	public void onlyThreeSlotsAreUsed() {
+		Set<long[]> seen = new HashSet<>();
+		for (int i = 1; i < 20; i++) {
+			seen.add(buffer.back());
+			capture(i);
+			if (i % 3 == 0) {
+				seen.add(buffer.take());
+			}
+		}
+		assertEquals(3, seen.size());
+	}
+
+	@Test
+	public void concurrentHandoffKeepsFramesWholeAndAccounted() throws InterruptedException {
+		final long frames = 200000;
+		Thread producer = new Thread(() -> {
+			for (long i = 1; i <= frames; i++) {
+				capture(i);
+			}
+		});
+		producer.start();
+		long taken = 0;
+		long first = 0;
+		long last = 0;
+		while (last < frames) {
+			long[] frame = buffer.take();
+			if (frame == null) {
+				continue;
+			}
+			taken++;
+			if (first == 0) {
+				first = frame[0];
+			}
+			// the slot holds the frame its sequence number says, and frames only move forward
+			assertEquals(buffer.getSequence(), frame[0]);
+			assertEquals(frame[0] * 10, buffer.getTimestamp());
+			assertEquals(true, frame[0] > last);
+			last = frame[0];
+		}
+		producer.join();
+		assertNull(buffer.take());
+		// every frame after the first one taken was either taken or counted as skipped
+		assertEquals(frames - first + 1, taken + buffer.getSkippedItems());
+	}
+
+	@Test
+	public void sameSlotObjectIsReturnedForAFrame() {
+		long[] back = buffer.back();
+		capture(1);
+		assertSame(back, buffer.take());
+	}
+}